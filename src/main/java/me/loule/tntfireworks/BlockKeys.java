@@ -0,0 +1,37 @@
+package me.loule.tntfireworks;
+
+/**
+ * Packs block and chunk coordinates into longs so they can be stored
+ * without allocating a Location or Block per position.
+ */
+public final class BlockKeys {
+
+    private BlockKeys() {
+    }
+
+    /**
+     * Packs block coordinates into a long (26 bits X, 26 bits Z, 12 bits Y)
+     */
+    public static long pack(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    public static int unpackX(long key) {
+        return (int) (key >> 38);
+    }
+
+    public static int unpackY(long key) {
+        return (int) (key << 52 >> 52);
+    }
+
+    public static int unpackZ(long key) {
+        return (int) (key << 26 >> 38);
+    }
+
+    /**
+     * Packs chunk coordinates into a long
+     */
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,185 @@
+package me.loule.tntfireworks;
+
+import org.bukkit.World;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * Work queue for chain reactions. TNT found around an explosion is queued here
+ * and primed a bounded amount per tick, so a huge TNT build spreads its cost
+ * over several ticks instead of producing one enormous tick.
+ */
+public class CascadeQueue {
+
+    /**
+     * Order in which queued TNT blocks are primed
+     */
+    public enum Order {
+        // Primed in the order they were discovered
+        FIFO,
+        // Closest to the explosion that found them first
+        DISTANCE
+    }
+
+    /**
+     * Primes a single TNT block
+     */
+    @FunctionalInterface
+    public interface Primer {
+        void prime(World world, int x, int y, int z, int fuseTicks, CascadeTracker.Cascade cascade, int generation);
+    }
+
+    private static final class PendingPrime {
+        private final World world;
+        private final long position;
+        private final int distanceSquared;
+        private final int fuseTicks;
+        private final CascadeTracker.Cascade cascade;
+        private final int generation;
+        private final long sequence;
+
+        private PendingPrime(World world, long position, int distanceSquared, int fuseTicks,
+                             CascadeTracker.Cascade cascade, int generation, long sequence) {
+            this.world = world;
+            this.position = position;
+            this.distanceSquared = distanceSquared;
+            this.fuseTicks = fuseTicks;
+            this.cascade = cascade;
+            this.generation = generation;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final Comparator<PendingPrime> DISTANCE_ORDER = Comparator
+            .comparingInt((PendingPrime pending) -> pending.distanceSquared)
+            .thenComparingLong(pending -> pending.sequence);
+
+    private final Primer primer;
+    private final Map<World, Set<Long>> queuedPositions = new HashMap<>();
+    private Queue<PendingPrime> queue = new ArrayDeque<>();
+    private Order order = Order.FIFO;
+    private long nextSequence;
+
+    public CascadeQueue(Primer primer) {
+        this.primer = primer;
+    }
+
+    /**
+     * Queues a TNT block for priming. Blocks already waiting in the queue are ignored.
+     * @param world World of the block
+     * @param x Block X
+     * @param y Block Y
+     * @param z Block Z
+     * @param distanceSquared Squared distance to the explosion that found the block
+     * @param fuseTicks Fuse time of the primed TNT
+     * @param cascade Cascade the TNT belongs to
+     * @param generation Generation of the TNT in its cascade
+     * @return false if the block was already waiting in the queue
+     */
+    public synchronized boolean enqueue(World world, int x, int y, int z, int distanceSquared, int fuseTicks,
+                                        CascadeTracker.Cascade cascade, int generation) {
+        long position = BlockKeys.pack(x, y, z);
+        if (!queuedPositions.computeIfAbsent(world, w -> new HashSet<>()).add(position)) {
+            return false;
+        }
+        queue.add(new PendingPrime(world, position, distanceSquared, fuseTicks, cascade, generation,
+                nextSequence++));
+        return true;
+    }
+
+    /**
+     * Primes queued TNT until the queue is empty or one of the budgets is used up.
+     * The remaining blocks are carried over to the next call.
+     * @param maxPrimes Maximum number of blocks to prime (0 = no limit)
+     * @param budgetMicros Maximum time to spend, in microseconds (0 = no limit)
+     * @return The number of blocks primed
+     */
+    public synchronized int drain(int maxPrimes, long budgetMicros) {
+        if (queue.isEmpty()) {
+            return 0;
+        }
+
+        long deadline = budgetMicros > 0 ? System.nanoTime() + budgetMicros * 1000L : Long.MAX_VALUE;
+        int primed = 0;
+
+        while (!queue.isEmpty()) {
+            if (maxPrimes > 0 && primed >= maxPrimes) {
+                break;
+            }
+            // Always prime at least one block per tick so the queue keeps moving
+            if (primed > 0 && System.nanoTime() >= deadline) {
+                break;
+            }
+
+            PendingPrime pending = queue.poll();
+            Set<Long> positions = queuedPositions.get(pending.world);
+            if (positions != null) {
+                positions.remove(pending.position);
+                if (positions.isEmpty()) {
+                    queuedPositions.remove(pending.world);
+                }
+            }
+
+            primer.prime(pending.world, BlockKeys.unpackX(pending.position),
+                    BlockKeys.unpackY(pending.position), BlockKeys.unpackZ(pending.position), pending.fuseTicks,
+                    pending.cascade, pending.generation);
+            primed++;
+        }
+
+        return primed;
+    }
+
+    /**
+     * Changes the priming order, keeping every block already queued
+     * @param order The new order
+     */
+    public synchronized void setOrder(Order order) {
+        if (order == this.order) {
+            return;
+        }
+
+        Queue<PendingPrime> reordered = order == Order.DISTANCE
+                ? new PriorityQueue<>(Math.max(queue.size(), 11), DISTANCE_ORDER)
+                : new ArrayDeque<>(queue.size());
+
+        if (order == Order.FIFO) {
+            // Restore discovery order
+            PendingPrime[] pending = queue.toArray(new PendingPrime[0]);
+            Arrays.sort(pending, Comparator.comparingLong(p -> p.sequence));
+            Collections.addAll(reordered, pending);
+        } else {
+            reordered.addAll(queue);
+        }
+
+        this.queue = reordered;
+        this.order = order;
+    }
+
+    /**
+     * Drops every queued block, for example when the plugin is disabled
+     */
+    public synchronized void clear() {
+        queue.clear();
+        queuedPositions.clear();
+    }
+
+    /**
+     * @return The number of TNT blocks waiting to be primed
+     */
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+}
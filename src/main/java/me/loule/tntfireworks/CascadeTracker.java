@@ -0,0 +1,231 @@
+package me.loule.tntfireworks;
+
+import org.bukkit.entity.Entity;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Groups chain reactions into cascades. Every TNT primed by a chain reaction is tagged
+ * with its cascade and generation in a map keyed by entity id, so its own explosion
+ * continues the same cascade. Cascades are stopped by depth, size and duration limits,
+ * and a summary is logged once a large cascade is over.
+ */
+public class CascadeTracker {
+
+    /**
+     * Limits that can stop a cascade
+     */
+    public enum Limit {
+        DEPTH,
+        PRIMES,
+        DURATION
+    }
+
+    /**
+     * One chain reaction, from the first explosion to the last TNT it primed
+     */
+    public static final class Cascade {
+        private final int id;
+        private final long startedAt;
+        private int queued;
+        private int primed;
+        private int maxGeneration;
+        private int stopped;
+        private Limit stoppedBy;
+        // Explosions being handled, TNT waiting to be primed and primed TNT still alive
+        private int pending;
+
+        private Cascade(int id, long startedAt) {
+            this.id = id;
+            this.startedAt = startedAt;
+        }
+
+        public int getId() {
+            return id;
+        }
+    }
+
+    /**
+     * Position of an explosion or a primed TNT in its cascade
+     */
+    public static final class Member {
+        private final Cascade cascade;
+        private final int generation;
+        private final Entity entity;
+
+        private Member(Cascade cascade, int generation, Entity entity) {
+            this.cascade = cascade;
+            this.generation = generation;
+            this.entity = entity;
+        }
+
+        public Cascade getCascade() {
+            return cascade;
+        }
+
+        public int getGeneration() {
+            return generation;
+        }
+    }
+
+    private final Logger logger;
+    private final ConfigManager configManager;
+    // Primed TNT of running cascades, keyed by entity id
+    private final Map<Integer, Member> primedMembers = new HashMap<>();
+    private int nextId = 1;
+
+    public CascadeTracker(Logger logger, ConfigManager configManager) {
+        this.logger = logger;
+        this.configManager = configManager;
+    }
+
+    /**
+     * Returns the cascade of an exploding entity, or starts a new cascade for explosions
+     * that were not primed by a chain reaction. The returned member must be released once
+     * the explosion has been handled.
+     * @param entity The exploding entity, or null for block explosions
+     * @return The member of the explosion
+     */
+    public synchronized Member explode(Entity entity) {
+        if (entity != null) {
+            Member member = primedMembers.remove(entity.getEntityId());
+            if (member != null) {
+                return member;
+            }
+        }
+
+        Cascade cascade = new Cascade(nextId++, System.nanoTime());
+        cascade.pending = 1;
+        return new Member(cascade, 0, null);
+    }
+
+    /**
+     * Checks the limits before a TNT found by an explosion is queued, and counts it if it may be queued
+     * @param config The configuration of the caller
+     * @param origin The explosion that found the TNT
+     * @return Whether the TNT may be queued
+     */
+    public synchronized boolean admit(ConfigSnapshot config, Member origin) {
+        Cascade cascade = origin.cascade;
+        Limit limit = null;
+        int maxDepth = config.getCascadeMaxDepth();
+        int maxPrimes = config.getCascadeMaxPrimes();
+        long maxDurationTicks = config.getCascadeMaxDurationTicks();
+
+        if (maxDepth > 0 && origin.generation + 1 > maxDepth) {
+            limit = Limit.DEPTH;
+        } else if (maxPrimes > 0 && cascade.queued >= maxPrimes) {
+            limit = Limit.PRIMES;
+        } else if (maxDurationTicks > 0 && System.nanoTime() - cascade.startedAt > maxDurationTicks * 50_000_000L) {
+            limit = Limit.DURATION;
+        }
+
+        if (limit != null) {
+            cascade.stopped++;
+            if (cascade.stoppedBy == null) {
+                cascade.stoppedBy = limit;
+            }
+            return false;
+        }
+
+        cascade.queued++;
+        cascade.pending++;
+        cascade.maxGeneration = Math.max(cascade.maxGeneration, origin.generation + 1);
+        return true;
+    }
+
+    /**
+     * @param cascade The cascade
+     * @return Whether a limit already stopped part of the cascade
+     */
+    public synchronized boolean isStopped(Cascade cascade) {
+        return cascade.stoppedBy != null;
+    }
+
+    /**
+     * Undoes {@link #admit} for a TNT that was not queued after all, because it was already waiting
+     * @param cascade The cascade of the TNT
+     */
+    public synchronized void cancel(Cascade cascade) {
+        cascade.queued--;
+        release(cascade);
+    }
+
+    /**
+     * Keeps a cascade running while work for it is done elsewhere, such as an async plan
+     * @param cascade The cascade
+     */
+    public synchronized void hold(Cascade cascade) {
+        cascade.pending++;
+    }
+
+    /**
+     * Tags a TNT primed by a cascade
+     * @param entity The primed TNT
+     * @param cascade Its cascade
+     * @param generation Its generation
+     */
+    public synchronized void track(Entity entity, Cascade cascade, int generation) {
+        cascade.primed++;
+        primedMembers.put(entity.getEntityId(), new Member(cascade, generation, entity));
+    }
+
+    /**
+     * Counts a TNT that was added to the stack of another primed TNT instead of being spawned
+     * @param cascade The cascade of the TNT
+     */
+    public synchronized void stack(Cascade cascade) {
+        cascade.primed++;
+        release(cascade);
+    }
+
+    /**
+     * Ends an explosion, a hold or a queued TNT that could not be primed.
+     * The cascade is over once nothing is left pending.
+     * @param cascade The cascade
+     */
+    public synchronized void release(Cascade cascade) {
+        if (--cascade.pending == 0) {
+            logSummary(cascade);
+        }
+    }
+
+    /**
+     * Forgets primed TNT that was removed without exploding
+     */
+    public synchronized void prune() {
+        Iterator<Member> iterator = primedMembers.values().iterator();
+        while (iterator.hasNext()) {
+            Member member = iterator.next();
+            if (!member.entity.isValid()) {
+                iterator.remove();
+                release(member.cascade);
+            }
+        }
+    }
+
+    /**
+     * @return The number of primed TNT currently tagged
+     */
+    public synchronized int size() {
+        return primedMembers.size();
+    }
+
+    private void logSummary(Cascade cascade) {
+        int minPrimes = configManager.getSnapshot().getCascadeSummaryMinPrimes();
+        if (minPrimes < 0 || cascade.queued == 0 || cascade.queued < minPrimes) {
+            return;
+        }
+
+        double seconds = (System.nanoTime() - cascade.startedAt) / 1_000_000_000.0;
+        String summary = String.format("Cascade #%d ended after %.1fs: %d TNT queued, %d primed, depth %d",
+                cascade.id, seconds, cascade.queued, cascade.primed, cascade.maxGeneration);
+        if (cascade.stoppedBy != null) {
+            summary += ", " + cascade.stopped + " TNT stopped (" + cascade.stoppedBy + " limit reached first)";
+        }
+        logger.info(summary);
+    }
+}
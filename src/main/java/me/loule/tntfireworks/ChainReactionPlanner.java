@@ -0,0 +1,160 @@
+package me.loule.tntfireworks;
+
+import org.bukkit.World;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Plans chain reactions off the main thread. Chunk snapshots are captured on the
+ * thread owning the explosion, TNT positions and fuse times are computed in an async
+ * task, and the result is handed back to that thread where it is queued for priming.
+ */
+public class ChainReactionPlanner {
+    // A plan whose chunks changed is computed again this many times, then the chunks are scanned on the spot
+    private static final int MAX_REPLANS = 1;
+
+    private final Main plugin;
+    private final ChainReactionScanner scanner;
+    private final TntIndex tntIndex;
+    private final CascadeTracker cascadeTracker;
+    private final ExplosionRandom explosionRandom;
+
+    public ChainReactionPlanner(Main plugin, ChainReactionScanner scanner, TntIndex tntIndex,
+                                CascadeTracker cascadeTracker, ExplosionRandom explosionRandom) {
+        this.plugin = plugin;
+        this.scanner = scanner;
+        this.tntIndex = tntIndex;
+        this.cascadeTracker = cascadeTracker;
+        this.explosionRandom = explosionRandom;
+    }
+
+    /**
+     * Starts planning the chain reaction of an explosion. Must be called on the thread owning the explosion.
+     * @param config The configuration of the explosion, also used to queue the plan
+     * @param world World of the explosion
+     * @param centerX Block X of the explosion
+     * @param centerY Block Y of the explosion
+     * @param centerZ Block Z of the explosion
+     * @param offsets Offsets to check, sorted by distance
+     * @param maxPrimes Maximum number of TNT blocks to prime (0 = no limit)
+     * @param minFuseTicks Minimum fuse time of the primed TNT
+     * @param maxFuseTicks Maximum fuse time of the primed TNT
+     * @param origin The explosion in its cascade
+     */
+    public void plan(ConfigSnapshot config, World world, int centerX, int centerY, int centerZ, OffsetTable offsets,
+                     int maxPrimes, int minFuseTicks, int maxFuseTicks, CascadeTracker.Member origin) {
+        long seed = explosionRandom.seed(config, world, centerX, centerY, centerZ);
+        // The cascade keeps running until the plan is queued
+        cascadeTracker.hold(origin.getCascade());
+        plan(config, world, centerX, centerY, centerZ, offsets, maxPrimes, minFuseTicks, maxFuseTicks, seed, 0,
+                origin);
+    }
+
+    private void plan(ConfigSnapshot config, World world, int centerX, int centerY, int centerZ,
+                      OffsetTable offsets, int maxPrimes, int minFuseTicks, int maxFuseTicks, long seed, int attempt,
+                      CascadeTracker.Member origin) {
+        ChainReactionScanner.SnapshotGrid grid = scanner.capture(world, centerX, centerZ, offsets.getRadius());
+        if (grid == null) {
+            cascadeTracker.release(origin.getCascade());
+            return;
+        }
+        long stamp = tntIndex.getChangeStamp();
+
+        plugin.getTaskScheduler().runAsync(() -> {
+            Plan plan = new Plan();
+            // A replan draws the same fuse times again
+            SplittableRandom random = new SplittableRandom(seed);
+            ChainReactionScanner.scanGrid(grid, centerX, centerY, centerZ, offsets, maxPrimes, (x, y, z) -> {
+                int fuseTicks = (minFuseTicks == maxFuseTicks) ? minFuseTicks :
+                        minFuseTicks + random.nextInt(maxFuseTicks - minFuseTicks + 1);
+                int dx = x - centerX;
+                int dy = y - centerY;
+                int dz = z - centerZ;
+                plan.add(BlockKeys.pack(x, y, z), dx * dx + dy * dy + dz * dz, fuseTicks);
+            });
+
+            // An empty plan is only worth checking again if TNT changed somewhere meanwhile
+            if (!plugin.isEnabled() || (plan.size == 0 && tntIndex.getChangeStamp() == stamp)) {
+                cascadeTracker.release(origin.getCascade());
+                return;
+            }
+
+            // Back on the thread owning the explosion
+            plugin.getTaskScheduler().runAt(world, centerX >> 4, centerZ >> 4, () -> {
+                if (isOutdated(grid, stamp)) {
+                    if (attempt < MAX_REPLANS) {
+                        plan(config, world, centerX, centerY, centerZ, offsets, maxPrimes, minFuseTicks,
+                                maxFuseTicks, seed, attempt + 1, origin);
+                    } else {
+                        // TNT placed while planning would be missed, scan the live chunks instead
+                        scanNow(config, world, centerX, centerY, centerZ, offsets, maxPrimes, minFuseTicks,
+                                maxFuseTicks, seed, origin);
+                    }
+                    return;
+                }
+
+                // Nothing changed since the snapshots were captured
+                for (int i = 0; i < plan.size; i++) {
+                    long position = plan.positions[i];
+                    plugin.enqueueChainPrime(config, world, BlockKeys.unpackX(position),
+                            BlockKeys.unpackY(position), BlockKeys.unpackZ(position), plan.distancesSquared[i],
+                            plan.fuseTicks[i], origin);
+                }
+                cascadeTracker.release(origin.getCascade());
+            });
+        });
+    }
+
+    private void scanNow(ConfigSnapshot config, World world, int centerX, int centerY, int centerZ,
+                         OffsetTable offsets, int maxPrimes, int minFuseTicks, int maxFuseTicks, long seed,
+                         CascadeTracker.Member origin) {
+        SplittableRandom random = new SplittableRandom(seed);
+        try {
+            scanner.scan(world, centerX, centerY, centerZ, offsets, maxPrimes, (x, y, z) -> {
+                int fuseTicks = (minFuseTicks == maxFuseTicks) ? minFuseTicks :
+                        minFuseTicks + random.nextInt(maxFuseTicks - minFuseTicks + 1);
+                int dx = x - centerX;
+                int dy = y - centerY;
+                int dz = z - centerZ;
+                plugin.enqueueChainPrime(config, world, x, y, z, dx * dx + dy * dy + dz * dz, fuseTicks, origin);
+            });
+        } finally {
+            cascadeTracker.release(origin.getCascade());
+        }
+    }
+
+    private boolean isOutdated(ChainReactionScanner.SnapshotGrid grid, long stamp) {
+        for (int i = 0; i < grid.getChunksX(); i++) {
+            for (int j = 0; j < grid.getChunksZ(); j++) {
+                if (tntIndex.hasChangedSince(grid.getWorld(), grid.getMinChunkX() + i, grid.getMinChunkZ() + j,
+                        stamp)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * TNT positions and fuse times computed by an async task
+     */
+    private static final class Plan {
+        private long[] positions = new long[16];
+        private int[] distancesSquared = new int[16];
+        private int[] fuseTicks = new int[16];
+        private int size;
+
+        private void add(long position, int distanceSquared, int fuse) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+                distancesSquared = Arrays.copyOf(distancesSquared, size * 2);
+                fuseTicks = Arrays.copyOf(fuseTicks, size * 2);
+            }
+            positions[size] = position;
+            distancesSquared[size] = distanceSquared;
+            fuseTicks[size] = fuse;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package me.loule.tntfireworks;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.type.TNT;
+
+import me.loule.tntfireworks.scheduler.TaskScheduler;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds TNT blocks around an explosion by reading chunk snapshots instead of
+ * probing every block of the search area through the live world.
+ */
+public class ChainReactionScanner {
+
+    /**
+     * Receives the coordinates of every TNT block found by a scan
+     */
+    @FunctionalInterface
+    public interface TntVisitor {
+        void visit(int x, int y, int z);
+    }
+
+    private final TaskScheduler taskScheduler;
+    private final BlockData tntData;
+    private final BlockData unstableTntData;
+
+    // Snapshots taken during the current tick, shared by every explosion of a cascade
+    private final Map<World, Map<Long, ChunkSnapshot>> snapshotCache = new ConcurrentHashMap<>();
+    // Chunks known to hold no TNT during the current tick
+    private final Map<World, Set<Long>> emptyChunkCache = new ConcurrentHashMap<>();
+
+    public ChainReactionScanner(TaskScheduler taskScheduler) {
+        this.taskScheduler = taskScheduler;
+        this.tntData = Bukkit.createBlockData(Material.TNT);
+        TNT unstable = (TNT) Bukkit.createBlockData(Material.TNT);
+        unstable.setUnstable(true);
+        this.unstableTntData = unstable;
+    }
+
+    /**
+     * Immutable set of chunk snapshots covering the area around an explosion.
+     * Captured on the main thread, it can then be scanned from any thread.
+     */
+    public static final class SnapshotGrid {
+        private final World world;
+        private final ChunkSnapshot[] snapshots;
+        private final int minChunkX;
+        private final int minChunkZ;
+        private final int chunksX;
+        private final int chunksZ;
+        private final int minHeight;
+        private final int maxHeight;
+
+        private SnapshotGrid(World world, ChunkSnapshot[] snapshots, int minChunkX, int minChunkZ,
+                             int chunksX, int chunksZ) {
+            this.world = world;
+            this.snapshots = snapshots;
+            this.minChunkX = minChunkX;
+            this.minChunkZ = minChunkZ;
+            this.chunksX = chunksX;
+            this.chunksZ = chunksZ;
+            this.minHeight = world.getMinHeight();
+            this.maxHeight = world.getMaxHeight();
+        }
+
+        public World getWorld() {
+            return world;
+        }
+
+        public int getMinChunkX() {
+            return minChunkX;
+        }
+
+        public int getMinChunkZ() {
+            return minChunkZ;
+        }
+
+        public int getChunksX() {
+            return chunksX;
+        }
+
+        public int getChunksZ() {
+            return chunksZ;
+        }
+    }
+
+    /**
+     * Visits the TNT blocks inside the shape of an offset table, closest first.
+     * Chunks whose palettes hold no TNT are skipped without reading any block.
+     * @param world World to scan
+     * @param centerX Block X of the center
+     * @param centerY Block Y of the center
+     * @param centerZ Block Z of the center
+     * @param offsets Offsets to check, sorted by distance
+     * @param maxResults Stop after this many TNT blocks (0 = no limit)
+     * @param visitor Callback for each TNT block found
+     */
+    public void scan(World world, int centerX, int centerY, int centerZ, OffsetTable offsets, int maxResults,
+                     TntVisitor visitor) {
+        SnapshotGrid grid = capture(world, centerX, centerZ, offsets.getRadius());
+        if (grid != null) {
+            scanGrid(grid, centerX, centerY, centerZ, offsets, maxResults, visitor);
+        }
+    }
+
+    /**
+     * Captures the snapshots of every chunk within a radius of a block position.
+     * Must be called on the thread owning the center. On Folia, chunks owned by
+     * another region are treated as holding no TNT.
+     * @param world World to capture
+     * @param centerX Block X of the center
+     * @param centerZ Block Z of the center
+     * @param radius Radius to cover, in blocks
+     * @return The captured grid, or null if none of the chunks holds TNT
+     */
+    public SnapshotGrid capture(World world, int centerX, int centerZ, int radius) {
+        int minChunkX = (centerX - radius) >> 4;
+        int minChunkZ = (centerZ - radius) >> 4;
+        int chunksX = ((centerX + radius) >> 4) - minChunkX + 1;
+        int chunksZ = ((centerZ + radius) >> 4) - minChunkZ + 1;
+
+        ChunkSnapshot[] snapshots = new ChunkSnapshot[chunksX * chunksZ];
+        boolean anyTnt = false;
+        for (int i = 0; i < chunksX; i++) {
+            for (int j = 0; j < chunksZ; j++) {
+                ChunkSnapshot snapshot = getSnapshot(world, minChunkX + i, minChunkZ + j);
+                snapshots[i * chunksZ + j] = snapshot;
+                anyTnt |= snapshot != null;
+            }
+        }
+
+        return anyTnt ? new SnapshotGrid(world, snapshots, minChunkX, minChunkZ, chunksX, chunksZ) : null;
+    }
+
+    /**
+     * Visits the TNT blocks of a captured grid inside the shape of an offset table, closest first.
+     * Only reads the snapshots, so it is safe to call from an async task.
+     * @param grid Snapshots captured around the center
+     * @param centerX Block X of the center
+     * @param centerY Block Y of the center
+     * @param centerZ Block Z of the center
+     * @param offsets Offsets to check, sorted by distance
+     * @param maxResults Stop after this many TNT blocks (0 = no limit)
+     * @param visitor Callback for each TNT block found
+     */
+    public static void scanGrid(SnapshotGrid grid, int centerX, int centerY, int centerZ, OffsetTable offsets,
+                            int maxResults, TntVisitor visitor) {
+        int found = 0;
+
+        for (int i = 0; i < offsets.size(); i++) {
+            int y = centerY + offsets.getY(i);
+            if (y < grid.minHeight || y >= grid.maxHeight) {
+                continue;
+            }
+
+            int x = centerX + offsets.getX(i);
+            int z = centerZ + offsets.getZ(i);
+            ChunkSnapshot snapshot = grid.snapshots[((x >> 4) - grid.minChunkX) * grid.chunksZ
+                    + ((z >> 4) - grid.minChunkZ)];
+            if (snapshot == null || snapshot.isSectionEmpty((y >> 4) - (grid.minHeight >> 4))) {
+                continue;
+            }
+
+            if (snapshot.getBlockType(x & 15, y, z & 15) == Material.TNT) {
+                visitor.visit(x, y, z);
+                if (maxResults > 0 && ++found >= maxResults) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits every TNT block of a whole chunk
+     * @param world World of the chunk
+     * @param chunkX Chunk X
+     * @param chunkZ Chunk Z
+     * @param visitor Callback for each TNT block found
+     */
+    public void scanChunk(World world, int chunkX, int chunkZ, TntVisitor visitor) {
+        ChunkSnapshot snapshot = getSnapshot(world, chunkX, chunkZ);
+        if (snapshot == null) {
+            return;
+        }
+
+        int minSection = world.getMinHeight() >> 4;
+        int maxSection = (world.getMaxHeight() - 1) >> 4;
+        for (int sectionY = minSection; sectionY <= maxSection; sectionY++) {
+            if (snapshot.isSectionEmpty(sectionY - minSection)) {
+                continue;
+            }
+
+            for (int y = sectionY << 4; y < (sectionY + 1) << 4; y++) {
+                for (int x = 0; x < 16; x++) {
+                    for (int z = 0; z < 16; z++) {
+                        if (snapshot.getBlockType(x, y, z) == Material.TNT) {
+                            visitor.visit((chunkX << 4) + x, y, (chunkZ << 4) + z);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the cached snapshot of a chunk, or null if the chunk palette holds no TNT
+     * or the chunk is not loaded. Chunks are never loaded by a scan.
+     */
+    private ChunkSnapshot getSnapshot(World world, int chunkX, int chunkZ) {
+        long key = BlockKeys.chunkKey(chunkX, chunkZ);
+        Set<Long> emptyChunks = emptyChunkCache.computeIfAbsent(world, w -> ConcurrentHashMap.newKeySet());
+        if (emptyChunks.contains(key)) {
+            return null;
+        }
+
+        Map<Long, ChunkSnapshot> worldCache = snapshotCache.computeIfAbsent(world, w -> new ConcurrentHashMap<>());
+        ChunkSnapshot snapshot = worldCache.get(key);
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        // Loading the chunk would block the tick on chunk I/O
+        if (!world.isChunkLoaded(chunkX, chunkZ)) {
+            return null;
+        }
+
+        // Another region thread owns this chunk, it cannot be read from here
+        if (taskScheduler.isRegionThreaded() && !taskScheduler.isOwnedByCurrentThread(world, chunkX, chunkZ)) {
+            return null;
+        }
+
+        snapshot = world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, false, false);
+        if (!snapshot.contains(tntData) && !snapshot.contains(unstableTntData)) {
+            // Remember chunks without TNT so they are not copied again this tick
+            emptyChunks.add(key);
+            return null;
+        }
+        worldCache.put(key, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Drops every cached snapshot. Called once per tick so scans never see stale blocks
+     * for longer than the tick that captured them.
+     */
+    public void clearCache() {
+        snapshotCache.clear();
+        emptyChunkCache.clear();
+    }
+}
@@ -0,0 +1,35 @@
+package me.loule.tntfireworks;
+
+/**
+ * Shape of the area searched for TNT around an explosion
+ */
+public enum ChainShape {
+    SPHERE {
+        @Override
+        public boolean contains(int dx, int dy, int dz, int radius) {
+            return dx * dx + dy * dy + dz * dz <= radius * radius;
+        }
+    },
+    CUBE {
+        @Override
+        public boolean contains(int dx, int dy, int dz, int radius) {
+            return Math.abs(dx) <= radius && Math.abs(dy) <= radius && Math.abs(dz) <= radius;
+        }
+    },
+    CYLINDER {
+        @Override
+        public boolean contains(int dx, int dy, int dz, int radius) {
+            return dx * dx + dz * dz <= radius * radius && Math.abs(dy) <= radius;
+        }
+    };
+
+    /**
+     * Checks if an offset from the center is inside the shape
+     * @param dx X offset
+     * @param dy Y offset
+     * @param dz Z offset
+     * @param radius Radius of the shape, in blocks
+     * @return true if the offset is inside the shape
+     */
+    public abstract boolean contains(int dx, int dy, int dz, int radius);
+}
@@ -0,0 +1,129 @@
+package me.loule.tntfireworks;
+
+import org.bukkit.Color;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+/**
+ * Immutable palette of weighted colors. Sampling uses an alias table (Vose's method)
+ * built once, so each pick costs one random index and one random double whatever the palette size.
+ */
+public final class ColorPalette {
+    private final Color[] colors;
+    private final double[] probabilities;
+    private final int[] aliases;
+    private final boolean uniform;
+
+    private ColorPalette(Color[] colors, double[] probabilities, int[] aliases, boolean uniform) {
+        this.colors = colors;
+        this.probabilities = probabilities;
+        this.aliases = aliases;
+        this.uniform = uniform;
+    }
+
+    /**
+     * Builds a palette where every color has the same weight
+     * @param colors Colors of the palette, at least one
+     * @return The palette
+     */
+    public static ColorPalette uniform(List<Color> colors) {
+        double[] weights = new double[colors.size()];
+        Arrays.fill(weights, 1.0);
+        return build(colors, weights);
+    }
+
+    /**
+     * Builds a palette and its alias table
+     * @param colors Colors of the palette, at least one
+     * @param weights Positive weight of each color
+     * @return The palette
+     */
+    public static ColorPalette build(List<Color> colors, double[] weights) {
+        int size = colors.size();
+        double total = 0;
+        boolean uniform = true;
+        for (int i = 0; i < size; i++) {
+            total += weights[i];
+            uniform &= weights[i] == weights[0];
+        }
+
+        // Scale the weights so that their average is 1
+        double[] scaled = new double[size];
+        int[] small = new int[size];
+        int[] large = new int[size];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < size; i++) {
+            scaled[i] = weights[i] * size / total;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+
+        // Pair each column below 1 with a column above 1 that fills the rest of it
+        double[] probabilities = new double[size];
+        int[] aliases = new int[size];
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probabilities[less] = scaled[less];
+            aliases[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+
+        // Columns left are full, up to rounding errors
+        while (largeCount > 0) {
+            int index = large[--largeCount];
+            probabilities[index] = 1.0;
+            aliases[index] = index;
+        }
+        while (smallCount > 0) {
+            int index = small[--smallCount];
+            probabilities[index] = 1.0;
+            aliases[index] = index;
+        }
+
+        return new ColorPalette(colors.toArray(new Color[0]), probabilities, aliases, uniform);
+    }
+
+    /**
+     * Picks a color following the weights
+     * @param random Random source
+     * @return A color of the palette
+     */
+    public Color sample(RandomGenerator random) {
+        int index = random.nextInt(colors.length);
+        return random.nextDouble() < probabilities[index] ? colors[index] : colors[aliases[index]];
+    }
+
+    /**
+     * @return The number of colors in the palette
+     */
+    public int size() {
+        return colors.length;
+    }
+
+    /**
+     * @param index Index of the color
+     * @return The color at this index
+     */
+    public Color get(int index) {
+        return colors[index];
+    }
+
+    /**
+     * @return Whether every color has the same weight
+     */
+    public boolean isUniform() {
+        return uniform;
+    }
+}
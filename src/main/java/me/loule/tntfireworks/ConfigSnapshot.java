@@ -0,0 +1,749 @@
+package me.loule.tntfireworks;
+
+import org.bukkit.Color;
+import org.bukkit.Material;
+import org.bukkit.Tag;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.EntityType;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.logging.Logger;
+
+/**
+ * Immutable view of the configuration. A snapshot is parsed and validated in full before it is
+ * published by {@link ConfigManager}, so a reader holding one never sees values from two
+ * different loads. Code reading several values for one event should take one snapshot and keep it.
+ */
+public final class ConfigSnapshot {
+
+    private final boolean tntExplosionsEnabled;
+    private final boolean tntMinecartExplosionsEnabled;
+    private final boolean creeperExplosionsEnabled;
+    private final boolean blockDamageEnabled;
+    private final boolean creeperBlockDamageEnabled;
+    private final boolean explosionFastMode;
+    private final boolean explosionFastModeEffects;
+    private final boolean protectDecorationEntities;
+    private final Map<EntityType, ExplosionPolicy> entityExplosionPolicies;
+    private final Map<Material, ExplosionPolicy> blockExplosionPolicies;
+    private final boolean chainReactionEnabled;
+    private final int chainReactionRadius;
+    private final ChainShape chainReactionShape;
+    private final OffsetTable chainReactionOffsets;
+    private final OffsetTable chainReactionReducedOffsets;
+    private final int chainReactionMaxPrimes;
+    private final int chainReactionPrimesPerTick;
+    private final long chainReactionTickBudgetMicros;
+    private final CascadeQueue.Order chainReactionQueueOrder;
+    private final boolean chainReactionIndexEnabled;
+    private final boolean chainReactionAsyncPlanning;
+    private final boolean chainReactionDeferUnloaded;
+    private final int chainReactionDeferMaxAgeTicks;
+    private final int cascadeMaxDepth;
+    private final int cascadeMaxPrimes;
+    private final long cascadeMaxDurationTicks;
+    private final int cascadeSummaryMinPrimes;
+    private final boolean tntStackingEnabled;
+    private final int tntStackingCellSize;
+    private final int tntStackingFuseTolerance;
+    private final int tntStackingMaxStack;
+    private final int minFuseTicks;
+    private final int maxFuseTicks;
+    private final int minFireworks;
+    private final int maxFireworks;
+    private final int fireworkPower;
+    private final boolean fireworkInstantDetonate;
+    private final int fireworkEffectsPerRocket;
+    private final double fireworkPackingSpread;
+    private final boolean fireworkSpreadEnabled;
+    private final int fireworkSpreadMaxPerTick;
+    private final int fireworkSpreadMaxTicks;
+    private final int fireworkSpreadJitterTicks;
+    private final FireworkManager.RenderMode renderMode;
+    private final int fireworkCoalesceCellSize;
+    private final int fireworkCoalesceMaxScale;
+    private final boolean fireworkBudgetEnabled;
+    private final int fireworkBudgetWorldCapacity;
+    private final double fireworkBudgetWorldRefillPerTick;
+    private final int fireworkBudgetChunkCapacity;
+    private final double fireworkBudgetChunkRefillPerTick;
+    private final FireworkBudget.Policy fireworkBudgetPolicy;
+    private final int fireworkBudgetMergeMaxEffects;
+    private final boolean viewerCullingEnabled;
+    private final double viewerCullingDistance;
+    private final int viewerCullingRefreshTicks;
+    private final int viewerCullingUnseenFireworks;
+    private final ColorPalette fireworkPalette;
+    private final ColorPalette fireworkFadePalette;
+    private final boolean fireworkTrailEnabled;
+    private final boolean fireworkFlickerEnabled;
+    private final boolean randomizeFireworkEffects;
+    private final FireworkEffectPool fireworkEffectPool;
+    private final FireworkEffectPool plainFireworkEffectPool;
+    private final boolean deterministic;
+    private final long deterministicSeed;
+    private final boolean qualityGovernorEnabled;
+    private final List<Double> qualityGovernorThresholds;
+    private final double qualityGovernorRecoveryMargin;
+    private final int qualityGovernorHoldTicks;
+
+    private static final Map<String, Color> COLOR_MAP = new HashMap<>();
+
+    static {
+        COLOR_MAP.put("RED", Color.RED);
+        COLOR_MAP.put("BLUE", Color.BLUE);
+        COLOR_MAP.put("GREEN", Color.GREEN);
+        COLOR_MAP.put("YELLOW", Color.YELLOW);
+        COLOR_MAP.put("PURPLE", Color.PURPLE);
+        COLOR_MAP.put("WHITE", Color.WHITE);
+        COLOR_MAP.put("ORANGE", Color.ORANGE);
+        COLOR_MAP.put("LIME", Color.LIME);
+        COLOR_MAP.put("AQUA", Color.AQUA);
+        COLOR_MAP.put("BLACK", Color.BLACK);
+        COLOR_MAP.put("GRAY", Color.GRAY);
+        COLOR_MAP.put("NAVY", Color.NAVY);
+        COLOR_MAP.put("TEAL", Color.TEAL);
+        COLOR_MAP.put("OLIVE", Color.OLIVE);
+        COLOR_MAP.put("MAROON", Color.MAROON);
+        COLOR_MAP.put("SILVER", Color.SILVER);
+        COLOR_MAP.put("FUCHSIA", Color.FUCHSIA);
+    }
+
+    /**
+     * Parses a configuration, may be called from any thread
+     * @param config The loaded configuration file
+     * @param logger Logger for invalid values
+     */
+    public ConfigSnapshot(ConfigurationSection config, Logger logger) {
+        // Load settings from config
+        tntExplosionsEnabled = config.getBoolean("tnt-explosions-enabled", true);
+        tntMinecartExplosionsEnabled = config.getBoolean("tnt-minecart-explosions-enabled", true);
+        creeperExplosionsEnabled = config.getBoolean("creeper-explosions-enabled", true);
+        creeperBlockDamageEnabled = config.getBoolean("creeper-block-damage-enabled", false);
+        blockDamageEnabled = config.getBoolean("block-damage-enabled", false);
+        explosionFastMode = config.getBoolean("explosion-fast-mode", false);
+        explosionFastModeEffects = config.getBoolean("explosion-fast-mode-effects", true);
+        protectDecorationEntities = config.getBoolean("protect-decoration-entities", true);
+        Map<EntityType, ExplosionPolicy> entityPolicies = new EnumMap<>(EntityType.class);
+        Map<Material, ExplosionPolicy> blockPolicies = new EnumMap<>(Material.class);
+        loadExplosionPolicies(config, logger, entityPolicies, blockPolicies);
+        entityExplosionPolicies = entityPolicies;
+        blockExplosionPolicies = blockPolicies;
+        chainReactionEnabled = config.getBoolean("chain-reaction-enabled", true);
+        int radius = Math.max(0, config.getInt("chain-reaction-radius", 3));
+        if (radius > OffsetTable.MAX_RADIUS) {
+            logger.warning("chain-reaction-radius is greater than " + OffsetTable.MAX_RADIUS + " in config, using "
+                    + OffsetTable.MAX_RADIUS);
+            radius = OffsetTable.MAX_RADIUS;
+        }
+        chainReactionRadius = radius;
+        chainReactionMaxPrimes = Math.max(0, config.getInt("chain-reaction-max-primes", 0));
+        chainReactionShape = parseEnum(config, logger, "chain-reaction-shape", ChainShape.CUBE,
+                "chain reaction shape");
+
+        // Offsets are only rebuilt here, on load and on /tntfireworks reload
+        chainReactionOffsets = OffsetTable.build(chainReactionShape, chainReactionRadius);
+        chainReactionReducedOffsets = chainReactionOffsets.shrink(chainReactionRadius / 2);
+        chainReactionPrimesPerTick = Math.max(0, config.getInt("chain-reaction-primes-per-tick", 200));
+        chainReactionTickBudgetMicros = Math.max(0L, config.getLong("chain-reaction-tick-budget-micros", 2000L));
+
+        chainReactionIndexEnabled = config.getBoolean("chain-reaction-index-enabled", false);
+        chainReactionAsyncPlanning = config.getBoolean("chain-reaction-async-planning", false);
+        chainReactionDeferUnloaded = config.getBoolean("chain-reaction-defer-unloaded-chunks", false);
+        chainReactionDeferMaxAgeTicks = Math.max(0, config.getInt("chain-reaction-defer-max-age-ticks", 6000));
+        cascadeMaxDepth = Math.max(0, config.getInt("cascade-max-depth", 0));
+        cascadeMaxPrimes = Math.max(0, config.getInt("cascade-max-primes", 0));
+        cascadeMaxDurationTicks = Math.max(0L, config.getLong("cascade-max-duration-ticks", 0L));
+        cascadeSummaryMinPrimes = Math.max(-1, config.getInt("cascade-summary-min-primes", 500));
+        tntStackingEnabled = config.getBoolean("tnt-stacking-enabled", false);
+        tntStackingCellSize = Math.max(1, config.getInt("tnt-stacking-cell-size", 2));
+        tntStackingFuseTolerance = Math.max(0, config.getInt("tnt-stacking-fuse-tolerance", 3));
+        tntStackingMaxStack = Math.max(1, config.getInt("tnt-stacking-max-stack", 64));
+        chainReactionQueueOrder = parseEnum(config, logger, "chain-reaction-queue-order",
+                CascadeQueue.Order.DISTANCE, "chain reaction queue order");
+
+        // Ranges are validated here so readers can draw from them without checks
+        int minFuse = Math.max(0, config.getInt("min-fuse-ticks", 10));
+        int maxFuse = Math.max(0, config.getInt("max-fuse-ticks", 19));
+        if (minFuse > maxFuse) {
+            logger.warning("min-fuse-ticks is greater than max-fuse-ticks in config, swapping them");
+        }
+        minFuseTicks = Math.min(minFuse, maxFuse);
+        maxFuseTicks = Math.max(minFuse, maxFuse);
+        int minCount = Math.max(0, config.getInt("min-fireworks", 2));
+        int maxCount = Math.max(0, config.getInt("max-fireworks", 4));
+        if (minCount > maxCount) {
+            logger.warning("min-fireworks is greater than max-fireworks in config, swapping them");
+        }
+        minFireworks = Math.min(minCount, maxCount);
+        maxFireworks = Math.max(minCount, maxCount);
+        fireworkPower = config.getInt("firework-power", 0);
+        fireworkInstantDetonate = config.getBoolean("firework-instant-detonate", false);
+        fireworkEffectsPerRocket = Math.max(1, config.getInt("firework-effects-per-rocket", 1));
+        fireworkPackingSpread = Math.max(0.0, config.getDouble("firework-packing-spread", 1.5));
+        fireworkSpreadEnabled = config.getBoolean("firework-spread-enabled", false);
+        fireworkSpreadMaxPerTick = Math.max(1, config.getInt("firework-spread-max-per-tick", 40));
+        fireworkSpreadMaxTicks = Math.max(0, config.getInt("firework-spread-max-ticks", 10));
+        fireworkSpreadJitterTicks = Math.max(0, config.getInt("firework-spread-jitter-ticks", 3));
+        renderMode = parseEnum(config, logger, "render-mode", FireworkManager.RenderMode.ENTITY, "render mode");
+
+        fireworkCoalesceCellSize = Math.max(0, config.getInt("firework-coalesce-cell-size", 0));
+        fireworkCoalesceMaxScale = Math.max(1, config.getInt("firework-coalesce-max-scale", 2));
+
+        fireworkBudgetEnabled = config.getBoolean("firework-budget-enabled", false);
+        fireworkBudgetWorldCapacity = Math.max(0, config.getInt("firework-budget-world-capacity", 400));
+        fireworkBudgetWorldRefillPerTick = Math.max(0.0, config.getDouble("firework-budget-world-refill-per-tick", 20.0));
+        fireworkBudgetChunkCapacity = Math.max(0, config.getInt("firework-budget-chunk-capacity", 40));
+        fireworkBudgetChunkRefillPerTick = Math.max(0.0, config.getDouble("firework-budget-chunk-refill-per-tick", 2.0));
+        fireworkBudgetMergeMaxEffects = Math.max(1, config.getInt("firework-budget-merge-max-effects", 8));
+        fireworkBudgetPolicy = parseEnum(config, logger, "firework-budget-policy", FireworkBudget.Policy.REDUCE,
+                "firework budget policy");
+
+        viewerCullingEnabled = config.getBoolean("viewer-culling-enabled", false);
+        viewerCullingDistance = Math.max(0.0, config.getDouble("viewer-culling-distance", 96.0));
+        viewerCullingRefreshTicks = Math.max(1, config.getInt("viewer-culling-refresh-ticks", 10));
+        viewerCullingUnseenFireworks = Math.max(0, config.getInt("viewer-culling-unseen-fireworks", 0));
+
+        fireworkTrailEnabled = config.getBoolean("firework-trail-enabled", true);
+        fireworkFlickerEnabled = config.getBoolean("firework-flicker-enabled", true);
+        randomizeFireworkEffects = config.getBoolean("randomize-firework-effects", true);
+
+        // Load colors
+        List<Color> fireworkColors = new ArrayList<>();
+        List<String> colorNames = config.getStringList("firework-colors");
+
+        if (colorNames.isEmpty()) {
+            // Default colors if none specified
+            fireworkColors.add(Color.RED);
+            fireworkColors.add(Color.BLUE);
+            fireworkColors.add(Color.GREEN);
+            fireworkColors.add(Color.YELLOW);
+            fireworkColors.add(Color.PURPLE);
+            fireworkColors.add(Color.WHITE);
+            fireworkColors.add(Color.ORANGE);
+            fireworkColors.add(Color.LIME);
+            fireworkColors.add(Color.AQUA);
+        } else {
+            for (String colorName : colorNames) {
+                Color color = parseColor(colorName);
+                if (color != null) {
+                    fireworkColors.add(color);
+                } else {
+                    logger.warning("Unknown color in config: " + colorName);
+                }
+            }
+
+            // If all colors were invalid, add defaults
+            if (fireworkColors.isEmpty()) {
+                logger.warning("No valid colors found in config, using defaults");
+                fireworkColors.add(Color.RED);
+                fireworkColors.add(Color.BLUE);
+                fireworkColors.add(Color.GREEN);
+            }
+        }
+
+        // A named palette replaces firework-colors, with weights and its own fade colors
+        ColorPalette colors = ColorPalette.uniform(fireworkColors);
+        ColorPalette fadeColors = colors;
+        String paletteName = config.getString("firework-palette", "");
+        if (!paletteName.isEmpty()) {
+            ConfigurationSection paletteSection = config.getConfigurationSection("firework-palettes." + paletteName);
+            ColorPalette palette = paletteSection == null ? null
+                    : loadPalette(paletteSection.getConfigurationSection("colors"), logger);
+            if (palette == null) {
+                logger.warning("Unknown or empty firework palette in config: " + paletteName
+                        + ", using firework-colors");
+            } else {
+                ColorPalette fadePalette = loadPalette(paletteSection.getConfigurationSection("fade-colors"), logger);
+                colors = palette;
+                fadeColors = fadePalette != null ? fadePalette : palette;
+            }
+        }
+        fireworkPalette = colors;
+        fireworkFadePalette = fadeColors;
+
+        deterministic = config.getBoolean("deterministic", false);
+        deterministicSeed = config.getLong("deterministic-seed", 0L);
+
+        // Prebuild the firework effects so spawning only picks one
+        int poolSize = config.getInt("firework-effect-pool-size", 2048);
+        fireworkEffectPool = poolSize > 0
+                ? FireworkEffectPool.build(poolSize, randomizeFireworkEffects, fireworkTrailEnabled,
+                        fireworkFlickerEnabled, fireworkPalette, fireworkFadePalette, poolRandom())
+                : null;
+
+        // Used by the quality governor when trails and flicker are turned off
+        plainFireworkEffectPool = poolSize > 0 && (fireworkTrailEnabled || fireworkFlickerEnabled)
+                ? FireworkEffectPool.build(poolSize, randomizeFireworkEffects, false, false,
+                        fireworkPalette, fireworkFadePalette, poolRandom())
+                : fireworkEffectPool;
+
+        qualityGovernorEnabled = config.getBoolean("quality-governor-enabled", false);
+        List<Double> thresholds = new ArrayList<>(config.getDoubleList("quality-governor-mspt-thresholds"));
+        if (thresholds.isEmpty()) {
+            thresholds = List.of(45.0, 55.0, 65.0, 80.0);
+        }
+        // One threshold per level above FULL
+        int maxThresholds = QualityGovernor.Level.values().length - 1;
+        if (thresholds.size() > maxThresholds) {
+            logger.warning("quality-governor-mspt-thresholds has more than " + maxThresholds
+                    + " values in config, ignoring the extra ones");
+            thresholds = thresholds.subList(0, maxThresholds);
+        }
+        List<Double> sorted = thresholds.stream().sorted().toList();
+        if (!sorted.equals(thresholds)) {
+            logger.warning("quality-governor-mspt-thresholds is not in increasing order in config, sorting it");
+        }
+        qualityGovernorThresholds = sorted;
+        qualityGovernorRecoveryMargin = Math.max(0.0, config.getDouble("quality-governor-recovery-margin", 5.0));
+        qualityGovernorHoldTicks = Math.max(1, config.getInt("quality-governor-hold-ticks", 100));
+    }
+
+    /**
+     * Compiles the explosion settings into one policy per entity type and per exploding block.
+     * Sources without a policy, or whose policy changes nothing, are ignored by the explosion handlers.
+     */
+    private void loadExplosionPolicies(ConfigurationSection config, Logger logger,
+                                       Map<EntityType, ExplosionPolicy> entityPolicies,
+                                       Map<Material, ExplosionPolicy> blockPolicies) {
+
+        // Historical settings, chain reactions only followed explosions turned into fireworks
+        entityPolicies.put(EntityType.TNT,
+                new ExplosionPolicy(tntExplosionsEnabled, blockDamageEnabled, tntExplosionsEnabled, 1));
+        entityPolicies.put(EntityType.TNT_MINECART, new ExplosionPolicy(tntMinecartExplosionsEnabled,
+                blockDamageEnabled, tntMinecartExplosionsEnabled, 1));
+        entityPolicies.put(EntityType.CREEPER, new ExplosionPolicy(creeperExplosionsEnabled,
+                creeperBlockDamageEnabled, creeperExplosionsEnabled, 1));
+
+        // Other sources, keyed by entity type or block type (BED covers every bed color)
+        ConfigurationSection sources = config.getConfigurationSection("explosion-sources");
+        if (sources != null) {
+            for (String sourceName : sources.getKeys(false)) {
+                ConfigurationSection section = sources.getConfigurationSection(sourceName);
+                if (section == null) {
+                    continue;
+                }
+                ExplosionPolicy policy = new ExplosionPolicy(
+                        section.getBoolean("fireworks", false),
+                        section.getBoolean("block-damage", true),
+                        section.getBoolean("chain-reaction", false),
+                        Math.max(1, section.getInt("firework-scale", 1)));
+
+                String name = sourceName.toUpperCase();
+                if (name.equals("BED")) {
+                    for (Material bed : Tag.BEDS.getValues()) {
+                        blockPolicies.put(bed, policy);
+                    }
+                    continue;
+                }
+                try {
+                    entityPolicies.put(EntityType.valueOf(name), policy);
+                    continue;
+                } catch (IllegalArgumentException e) {
+                    // Not an entity, maybe a block
+                }
+                Material material = Material.matchMaterial(name);
+                if (material != null && material.isBlock()) {
+                    blockPolicies.put(material, policy);
+                } else {
+                    logger.warning("Unknown explosion source in config: " + sourceName);
+                }
+            }
+        }
+
+        // The maps are never modified once the snapshot is published
+        entityPolicies.values().removeIf(ExplosionPolicy::isNoOp);
+        blockPolicies.values().removeIf(ExplosionPolicy::isNoOp);
+    }
+
+    /**
+     * Parses an enum value, falling back to a default when the value is unknown
+     * @param config The configuration
+     * @param logger Logger for an unknown value
+     * @param path Key of the value
+     * @param defaultValue Value used when the key is missing or unknown
+     * @param description Name of the setting in the warning
+     * @return The parsed value
+     */
+    private static <E extends Enum<E>> E parseEnum(ConfigurationSection config, Logger logger, String path,
+                                                   E defaultValue, String description) {
+        String name = config.getString(path, defaultValue.name());
+        try {
+            return Enum.valueOf(defaultValue.getDeclaringClass(), name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warning("Unknown " + description + " in config: " + name + ", using " + defaultValue.name());
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Parses a color name from the list of supported colors, or a hex code like #FF8800
+     * @param name The color name or hex code
+     * @return The color, or null if it is not valid
+     */
+    private static Color parseColor(String name) {
+        if (name.startsWith("#") && name.length() == 7) {
+            try {
+                return Color.fromRGB(Integer.parseInt(name.substring(1), 16));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return COLOR_MAP.get(name.toUpperCase());
+    }
+
+    /**
+     * Loads a weighted palette, each key is a color and each value its weight
+     * @param section The palette section
+     * @param logger Logger for invalid colors
+     * @return The palette, or null if the section is missing or has no valid color
+     */
+    private static ColorPalette loadPalette(ConfigurationSection section, Logger logger) {
+        if (section == null) {
+            return null;
+        }
+
+        List<Color> colors = new ArrayList<>();
+        List<Double> weights = new ArrayList<>();
+        for (String colorName : section.getKeys(false)) {
+            Color color = parseColor(colorName);
+            double weight = section.getDouble(colorName, 1.0);
+            if (color == null) {
+                logger.warning("Unknown color in config: " + colorName);
+            } else if (weight <= 0) {
+                logger.warning("Color weight must be positive in config: " + colorName);
+            } else {
+                colors.add(color);
+                weights.add(weight);
+            }
+        }
+        if (colors.isEmpty()) {
+            return null;
+        }
+
+        double[] weightArray = new double[weights.size()];
+        for (int i = 0; i < weightArray.length; i++) {
+            weightArray[i] = weights.get(i);
+        }
+        return ColorPalette.build(colors, weightArray);
+    }
+
+    /**
+     * @return The random source filling the effect pools, seeded in deterministic mode
+     */
+    private SplittableRandom poolRandom() {
+        return deterministic ? new SplittableRandom(deterministicSeed) : new SplittableRandom();
+    }
+
+    // Getters for all config values
+    public boolean isTntExplosionsEnabled() {
+        return tntExplosionsEnabled;
+    }
+
+    public boolean isTntMinecartExplosionsEnabled() {
+        return tntMinecartExplosionsEnabled;
+    }
+
+    public boolean isCreeperExplosionsEnabled() {
+        return creeperExplosionsEnabled;
+    }
+
+    public boolean isCreeperBlockDamageEnabled() {
+        return creeperBlockDamageEnabled;
+    }
+
+    /**
+     * @param type Type of the exploding entity
+     * @return The policy of this entity type, or null if its explosions are left alone
+     */
+    public ExplosionPolicy getExplosionPolicy(EntityType type) {
+        return entityExplosionPolicies.get(type);
+    }
+
+    /**
+     * @param material Type of the exploding block
+     * @return The policy of this block type, or null if its explosions are left alone
+     */
+    public ExplosionPolicy getExplosionPolicy(Material material) {
+        return blockExplosionPolicies.get(material);
+    }
+
+    public boolean isProtectDecorationEntities() {
+        return protectDecorationEntities;
+    }
+
+    public boolean isExplosionFastMode() {
+        return explosionFastMode;
+    }
+
+    public boolean isExplosionFastModeEffects() {
+        return explosionFastModeEffects;
+    }
+
+    public boolean isBlockDamageEnabled() {
+        return blockDamageEnabled;
+    }
+
+    public boolean isChainReactionEnabled() {
+        return chainReactionEnabled;
+    }
+
+    public int getChainReactionRadius() {
+        return chainReactionRadius;
+    }
+
+    public ChainShape getChainReactionShape() {
+        return chainReactionShape;
+    }
+
+    public OffsetTable getChainReactionOffsets() {
+        return chainReactionOffsets;
+    }
+
+    /**
+     * @return Offsets of half the chain reaction radius, used by the quality governor
+     */
+    public OffsetTable getChainReactionReducedOffsets() {
+        return chainReactionReducedOffsets;
+    }
+
+    public int getChainReactionMaxPrimes() {
+        return chainReactionMaxPrimes;
+    }
+
+    public int getChainReactionPrimesPerTick() {
+        return chainReactionPrimesPerTick;
+    }
+
+    public long getChainReactionTickBudgetMicros() {
+        return chainReactionTickBudgetMicros;
+    }
+
+    public CascadeQueue.Order getChainReactionQueueOrder() {
+        return chainReactionQueueOrder;
+    }
+
+    public boolean isChainReactionIndexEnabled() {
+        return chainReactionIndexEnabled;
+    }
+
+    public boolean isChainReactionAsyncPlanning() {
+        return chainReactionAsyncPlanning;
+    }
+
+    public boolean isChainReactionDeferUnloaded() {
+        return chainReactionDeferUnloaded;
+    }
+
+    public int getChainReactionDeferMaxAgeTicks() {
+        return chainReactionDeferMaxAgeTicks;
+    }
+
+    public int getCascadeMaxDepth() {
+        return cascadeMaxDepth;
+    }
+
+    public int getCascadeMaxPrimes() {
+        return cascadeMaxPrimes;
+    }
+
+    public long getCascadeMaxDurationTicks() {
+        return cascadeMaxDurationTicks;
+    }
+
+    public int getCascadeSummaryMinPrimes() {
+        return cascadeSummaryMinPrimes;
+    }
+
+    public boolean isTntStackingEnabled() {
+        return tntStackingEnabled;
+    }
+
+    public int getTntStackingCellSize() {
+        return tntStackingCellSize;
+    }
+
+    public int getTntStackingFuseTolerance() {
+        return tntStackingFuseTolerance;
+    }
+
+    public int getTntStackingMaxStack() {
+        return tntStackingMaxStack;
+    }
+
+    public int getMinFuseTicks() {
+        return minFuseTicks;
+    }
+
+    public int getMaxFuseTicks() {
+        return maxFuseTicks;
+    }
+
+    public int getMinFireworks() {
+        return minFireworks;
+    }
+
+    public int getMaxFireworks() {
+        return maxFireworks;
+    }
+
+    public int getFireworkPower() {
+        return fireworkPower;
+    }
+
+    public boolean isFireworkInstantDetonate() {
+        return fireworkInstantDetonate;
+    }
+
+    public int getFireworkEffectsPerRocket() {
+        return fireworkEffectsPerRocket;
+    }
+
+    public double getFireworkPackingSpread() {
+        return fireworkPackingSpread;
+    }
+
+    public boolean isFireworkSpreadEnabled() {
+        return fireworkSpreadEnabled;
+    }
+
+    public int getFireworkSpreadMaxPerTick() {
+        return fireworkSpreadMaxPerTick;
+    }
+
+    public int getFireworkSpreadMaxTicks() {
+        return fireworkSpreadMaxTicks;
+    }
+
+    public int getFireworkSpreadJitterTicks() {
+        return fireworkSpreadJitterTicks;
+    }
+
+    public FireworkManager.RenderMode getRenderMode() {
+        return renderMode;
+    }
+
+    public int getFireworkCoalesceCellSize() {
+        return fireworkCoalesceCellSize;
+    }
+
+    public int getFireworkCoalesceMaxScale() {
+        return fireworkCoalesceMaxScale;
+    }
+
+    public boolean isFireworkBudgetEnabled() {
+        return fireworkBudgetEnabled;
+    }
+
+    public int getFireworkBudgetWorldCapacity() {
+        return fireworkBudgetWorldCapacity;
+    }
+
+    public double getFireworkBudgetWorldRefillPerTick() {
+        return fireworkBudgetWorldRefillPerTick;
+    }
+
+    public int getFireworkBudgetChunkCapacity() {
+        return fireworkBudgetChunkCapacity;
+    }
+
+    public double getFireworkBudgetChunkRefillPerTick() {
+        return fireworkBudgetChunkRefillPerTick;
+    }
+
+    public FireworkBudget.Policy getFireworkBudgetPolicy() {
+        return fireworkBudgetPolicy;
+    }
+
+    public int getFireworkBudgetMergeMaxEffects() {
+        return fireworkBudgetMergeMaxEffects;
+    }
+
+    public boolean isViewerCullingEnabled() {
+        return viewerCullingEnabled;
+    }
+
+    public double getViewerCullingDistance() {
+        return viewerCullingDistance;
+    }
+
+    public int getViewerCullingRefreshTicks() {
+        return viewerCullingRefreshTicks;
+    }
+
+    public int getViewerCullingUnseenFireworks() {
+        return viewerCullingUnseenFireworks;
+    }
+
+    /**
+     * @return The palette of the main firework colors
+     */
+    public ColorPalette getFireworkPalette() {
+        return fireworkPalette;
+    }
+
+    /**
+     * @return The palette of the firework fade colors
+     */
+    public ColorPalette getFireworkFadePalette() {
+        return fireworkFadePalette;
+    }
+
+    public boolean isFireworkTrailEnabled() {
+        return fireworkTrailEnabled;
+    }
+
+    public boolean isFireworkFlickerEnabled() {
+        return fireworkFlickerEnabled;
+    }
+
+    public boolean isRandomizeFireworkEffects() {
+        return randomizeFireworkEffects;
+    }
+
+    /**
+     * @return The prebuilt firework effects, or null if pooling is disabled
+     */
+    public FireworkEffectPool getFireworkEffectPool() {
+        return fireworkEffectPool;
+    }
+
+    /**
+     * @return The prebuilt firework effects without trail and flicker, or null if pooling is disabled
+     */
+    public FireworkEffectPool getPlainFireworkEffectPool() {
+        return plainFireworkEffectPool;
+    }
+
+    public boolean isQualityGovernorEnabled() {
+        return qualityGovernorEnabled;
+    }
+
+    public List<Double> getQualityGovernorThresholds() {
+        return qualityGovernorThresholds;
+    }
+
+    public double getQualityGovernorRecoveryMargin() {
+        return qualityGovernorRecoveryMargin;
+    }
+
+    public int getQualityGovernorHoldTicks() {
+        return qualityGovernorHoldTicks;
+    }
+
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
+    /**
+     * @return The seed of deterministic mode, 0 to use the world seed
+     */
+    public long getDeterministicSeed() {
+        return deterministicSeed;
+    }
+}
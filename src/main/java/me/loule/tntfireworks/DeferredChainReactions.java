@@ -0,0 +1,171 @@
+package me.loule.tntfireworks;
+
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Chain reactions that reached chunks which were not loaded. Chain reactions never load
+ * chunks, instead the explosion is remembered for each unloaded chunk it reached and the
+ * chunk is searched for TNT once it loads. The cascade of a deferred explosion is held until the
+ * explosion is resumed or forgotten, so the cascade only ends once.
+ */
+public class DeferredChainReactions implements Listener {
+    // Explosions remembered per unloaded chunk, the oldest are dropped first
+    private static final int MAX_PER_CHUNK = 16;
+
+    private static final class DeferredExplosion {
+        private final int centerX;
+        private final int centerY;
+        private final int centerZ;
+        private final OffsetTable offsets;
+        private final CascadeTracker.Member origin;
+        private final long createdAt;
+
+        private DeferredExplosion(int centerX, int centerY, int centerZ, OffsetTable offsets,
+                                  CascadeTracker.Member origin, long createdAt) {
+            this.centerX = centerX;
+            this.centerY = centerY;
+            this.centerZ = centerZ;
+            this.offsets = offsets;
+            this.origin = origin;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private final Main plugin;
+    private final ConfigManager configManager;
+    private final CascadeTracker cascadeTracker;
+    private final Map<UUID, Map<Long, List<DeferredExplosion>>> pending = new HashMap<>();
+
+    public DeferredChainReactions(Main plugin, ConfigManager configManager, CascadeTracker cascadeTracker) {
+        this.plugin = plugin;
+        this.configManager = configManager;
+        this.cascadeTracker = cascadeTracker;
+    }
+
+    /**
+     * Remembers the explosion for every chunk within its radius that is not loaded
+     * @param config The configuration of the explosion
+     * @param world World of the explosion
+     * @param centerX Block X of the explosion
+     * @param centerY Block Y of the explosion
+     * @param centerZ Block Z of the explosion
+     * @param offsets Offsets searched around the explosion
+     * @param origin The explosion, whose cascade limits still apply once the chunks load
+     */
+    public void deferUnloaded(ConfigSnapshot config, World world, int centerX, int centerY, int centerZ,
+                              OffsetTable offsets, CascadeTracker.Member origin) {
+        if (!config.isChainReactionDeferUnloaded()) {
+            return;
+        }
+
+        int radius = offsets.getRadius();
+        for (int chunkX = (centerX - radius) >> 4; chunkX <= (centerX + radius) >> 4; chunkX++) {
+            for (int chunkZ = (centerZ - radius) >> 4; chunkZ <= (centerZ + radius) >> 4; chunkZ++) {
+                if (!world.isChunkLoaded(chunkX, chunkZ)) {
+                    defer(world, chunkX, chunkZ,
+                            new DeferredExplosion(centerX, centerY, centerZ, offsets, origin,
+                                    System.currentTimeMillis()));
+                }
+            }
+        }
+    }
+
+    private synchronized void defer(World world, int chunkX, int chunkZ, DeferredExplosion explosion) {
+        List<DeferredExplosion> explosions = pending.computeIfAbsent(world.getUID(), id -> new HashMap<>())
+                .computeIfAbsent(BlockKeys.chunkKey(chunkX, chunkZ), key -> new ArrayList<>());
+        if (explosions.size() >= MAX_PER_CHUNK) {
+            forget(explosions.remove(0));
+        }
+        cascadeTracker.hold(explosion.origin.getCascade());
+        explosions.add(explosion);
+    }
+
+    /**
+     * Forgets the explosions older than the configured maximum age
+     */
+    public synchronized void prune() {
+        long oldest = System.currentTimeMillis() - configManager.getSnapshot().getChainReactionDeferMaxAgeTicks() * 50L;
+        for (Map<Long, List<DeferredExplosion>> chunks : pending.values()) {
+            Iterator<List<DeferredExplosion>> iterator = chunks.values().iterator();
+            while (iterator.hasNext()) {
+                List<DeferredExplosion> explosions = iterator.next();
+                explosions.removeIf(explosion -> {
+                    if (explosion.createdAt >= oldest) {
+                        return false;
+                    }
+                    forget(explosion);
+                    return true;
+                });
+                if (explosions.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of chunks waiting to load
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (Map<Long, List<DeferredExplosion>> chunks : pending.values()) {
+            size += chunks.size();
+        }
+        return size;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        Chunk chunk = event.getChunk();
+        World world = chunk.getWorld();
+        List<DeferredExplosion> explosions;
+        synchronized (this) {
+            Map<Long, List<DeferredExplosion>> chunks = pending.get(world.getUID());
+            if (chunks == null) {
+                return;
+            }
+            explosions = chunks.remove(BlockKeys.chunkKey(chunk.getX(), chunk.getZ()));
+        }
+        if (explosions == null) {
+            return;
+        }
+
+        // Blocks are not changed while the chunk is loading, resume on the next tick
+        int chunkX = chunk.getX();
+        int chunkZ = chunk.getZ();
+        plugin.getTaskScheduler().runAtLater(world, chunkX, chunkZ, () -> {
+            for (DeferredExplosion explosion : explosions) {
+                plugin.resumeChainReaction(world, chunkX, chunkZ, explosion.centerX, explosion.centerY,
+                        explosion.centerZ, explosion.offsets, explosion.origin);
+            }
+        }, 1L);
+    }
+
+    @EventHandler
+    public synchronized void onWorldUnload(WorldUnloadEvent event) {
+        Map<Long, List<DeferredExplosion>> chunks = pending.remove(event.getWorld().getUID());
+        if (chunks != null) {
+            for (List<DeferredExplosion> explosions : chunks.values()) {
+                explosions.forEach(this::forget);
+            }
+        }
+    }
+
+    // Ends the hold of an explosion that will never be resumed
+    private void forget(DeferredExplosion explosion) {
+        cascadeTracker.release(explosion.origin.getCascade());
+    }
+}
@@ -0,0 +1,116 @@
+package me.loule.tntfireworks;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Groups the explosions of a tick into clusters of nearby explosions so that
+ * each cluster spawns a single, larger firework burst instead of one burst per explosion.
+ */
+public class ExplosionCoalescer {
+
+    private static final class Cluster {
+        private double sumX;
+        private double sumY;
+        private double sumZ;
+        private double minX = Double.MAX_VALUE;
+        private double minZ = Double.MAX_VALUE;
+        private double maxX = -Double.MAX_VALUE;
+        private double maxZ = -Double.MAX_VALUE;
+        private int explosions;
+        private int scale;
+        private int maxScale;
+
+        private void add(double x, double y, double z, int explosionScale) {
+            sumX += x;
+            sumY += y;
+            sumZ += z;
+            minX = Math.min(minX, x);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxZ = Math.max(maxZ, z);
+            explosions++;
+            scale += explosionScale;
+            maxScale = Math.max(maxScale, explosionScale);
+        }
+    }
+
+    private final Main plugin;
+    private final ConfigManager configManager;
+    private final FireworkManager fireworkManager;
+    private final Map<World, Map<Long, Cluster>> pending = new HashMap<>();
+    private boolean flushScheduled;
+
+    public ExplosionCoalescer(Main plugin, ConfigManager configManager, FireworkManager fireworkManager) {
+        this.plugin = plugin;
+        this.configManager = configManager;
+        this.fireworkManager = fireworkManager;
+    }
+
+    /**
+     * Records an explosion. Its fireworks are spawned with the rest of its cluster
+     * once the current tick is over.
+     * @param config The configuration of the explosion
+     * @param location Location of the explosion
+     * @param scale Multiplier applied to the firework count of this explosion
+     */
+    public void add(ConfigSnapshot config, Location location, int scale) {
+        int cellSize = config.getFireworkCoalesceCellSize();
+        if (cellSize <= 0) {
+            fireworkManager.spawnFireworks(config, location, scale, 0.0);
+            return;
+        }
+
+        long cellKey = BlockKeys.pack(
+                Math.floorDiv(location.getBlockX(), cellSize),
+                Math.floorDiv(location.getBlockY(), cellSize),
+                Math.floorDiv(location.getBlockZ(), cellSize));
+
+        synchronized (this) {
+            pending.computeIfAbsent(location.getWorld(), w -> new HashMap<>())
+                    .computeIfAbsent(cellKey, k -> new Cluster())
+                    .add(location.getX(), location.getY(), location.getZ(), scale);
+
+            if (!flushScheduled) {
+                flushScheduled = true;
+                plugin.getTaskScheduler().runGlobal(this::flush);
+            }
+        }
+    }
+
+    /**
+     * Spawns one burst per cluster collected since the last flush
+     */
+    public void flush() {
+        Map<World, Map<Long, Cluster>> clusters;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            clusters = new HashMap<>(pending);
+            pending.clear();
+        }
+
+        int maxScale = Math.max(1, configManager.getSnapshot().getFireworkCoalesceMaxScale());
+        for (Map.Entry<World, Map<Long, Cluster>> worldEntry : clusters.entrySet()) {
+            World world = worldEntry.getKey();
+            for (Cluster cluster : worldEntry.getValue().values()) {
+                Location center = new Location(world,
+                        cluster.sumX / cluster.explosions,
+                        cluster.sumY / cluster.explosions,
+                        cluster.sumZ / cluster.explosions);
+
+                // Spread the rockets over the area covered by the cluster
+                double spread = Math.max(cluster.maxX - cluster.minX, cluster.maxZ - cluster.minZ) / 2.0;
+                // A merged burst never gets smaller than its largest explosion
+                int scale = Math.max(cluster.maxScale, Math.min(cluster.scale, maxScale));
+                plugin.getTaskScheduler().runAt(center,
+                        () -> fireworkManager.spawnFireworks(center, scale, spread));
+            }
+        }
+    }
+}
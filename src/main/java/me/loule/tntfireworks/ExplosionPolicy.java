@@ -0,0 +1,49 @@
+package me.loule.tntfireworks;
+
+/**
+ * What the plugin does with the explosions of one source, compiled from the configuration on load.
+ * The firework profile of a source is only its firework scale: colors, effects and counts come from
+ * the global firework settings, so bursts of different sources can still be coalesced together.
+ */
+public final class ExplosionPolicy {
+    private final boolean fireworks;
+    private final boolean blockDamage;
+    private final boolean chainReaction;
+    private final int fireworkScale;
+
+    /**
+     * @param fireworks Whether the explosion spawns fireworks
+     * @param blockDamage Whether the explosion keeps its block damage
+     * @param chainReaction Whether the explosion activates nearby TNT
+     * @param fireworkScale Multiplier applied to the firework count
+     */
+    public ExplosionPolicy(boolean fireworks, boolean blockDamage, boolean chainReaction, int fireworkScale) {
+        this.fireworks = fireworks;
+        this.blockDamage = blockDamage;
+        this.chainReaction = chainReaction;
+        this.fireworkScale = fireworkScale;
+    }
+
+    public boolean isFireworks() {
+        return fireworks;
+    }
+
+    public boolean isBlockDamage() {
+        return blockDamage;
+    }
+
+    public boolean isChainReaction() {
+        return chainReaction;
+    }
+
+    public int getFireworkScale() {
+        return fireworkScale;
+    }
+
+    /**
+     * @return Whether the policy leaves the explosion exactly as vanilla
+     */
+    public boolean isNoOp() {
+        return !fireworks && blockDamage && !chainReaction;
+    }
+}
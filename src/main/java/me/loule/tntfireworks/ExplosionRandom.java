@@ -0,0 +1,58 @@
+package me.loule.tntfireworks;
+
+import org.bukkit.World;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Gives each explosion its own random stream. In deterministic mode the stream is derived
+ * from a seed, the explosion coordinates and the world tick, so the same explosion always
+ * gets the same fuse times, firework counts, colors and effect types.
+ */
+public class ExplosionRandom {
+
+    /**
+     * Creates the random stream of an explosion
+     * @param config The configuration of the explosion
+     * @param world World of the explosion
+     * @param x Block X of the explosion
+     * @param y Block Y of the explosion
+     * @param z Block Z of the explosion
+     * @return A new random stream, only meant to be used by one thread
+     */
+    public SplittableRandom create(ConfigSnapshot config, World world, int x, int y, int z) {
+        return new SplittableRandom(seed(config, world, x, y, z));
+    }
+
+    /**
+     * Computes the seed of the random stream of an explosion
+     * @param config The configuration of the explosion
+     * @param world World of the explosion
+     * @param x Block X of the explosion
+     * @param y Block Y of the explosion
+     * @param z Block Z of the explosion
+     * @return The seed, random unless deterministic mode is enabled
+     */
+    public long seed(ConfigSnapshot config, World world, int x, int y, int z) {
+        if (!config.isDeterministic()) {
+            return ThreadLocalRandom.current().nextLong();
+        }
+
+        long seed = config.getDeterministicSeed();
+        if (seed == 0) {
+            seed = world.getSeed();
+        }
+        seed = mix(seed ^ x);
+        seed = mix(seed ^ y);
+        seed = mix(seed ^ z);
+        return mix(seed ^ world.getFullTime());
+    }
+
+    // Finalizer of SplitMix64, spreads every input bit over the whole seed
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
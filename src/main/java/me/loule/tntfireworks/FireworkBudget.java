@@ -0,0 +1,155 @@
+package me.loule.tntfireworks;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits how many fireworks the plugin can spawn, with one token bucket per world
+ * and one per chunk. Each rocket costs a token and tokens refill every tick up to
+ * the bucket capacity, which puts a hard ceiling on the entities the plugin creates.
+ */
+public class FireworkBudget {
+    private static final double NANOS_PER_TICK = 50_000_000.0;
+
+    /**
+     * What happens to fireworks requested over budget
+     */
+    public enum Policy {
+        // The whole request is dropped unless it fits entirely
+        DROP,
+        // Only the rockets that fit are spawned
+        REDUCE,
+        // The effects of the rockets that do not fit are added to the rockets that do
+        MERGE
+    }
+
+    private static final class TokenBucket {
+        private double tokens;
+        private long lastRefill;
+
+        private TokenBucket(double capacity) {
+            this.tokens = capacity;
+            this.lastRefill = System.nanoTime();
+        }
+
+        private void refill(double capacity, double refillPerTick, long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) / NANOS_PER_TICK * refillPerTick);
+            lastRefill = now;
+        }
+    }
+
+    private final ConfigManager configManager;
+    private final Map<UUID, TokenBucket> worldBuckets = new ConcurrentHashMap<>();
+    private final Map<UUID, Map<Long, TokenBucket>> chunkBuckets = new ConcurrentHashMap<>();
+
+    private final AtomicLong droppedRockets = new AtomicLong();
+    private final AtomicLong reducedRockets = new AtomicLong();
+    private final AtomicLong mergedRockets = new AtomicLong();
+
+    public FireworkBudget(ConfigManager configManager) {
+        this.configManager = configManager;
+    }
+
+    /**
+     * Takes tokens for a request of rockets at a location
+     * @param config The configuration of the burst
+     * @param location Location of the fireworks
+     * @param requested Number of rockets requested
+     * @return The number of rockets that may be spawned, between 0 and requested
+     */
+    public int acquire(ConfigSnapshot config, Location location, int requested) {
+        if (!config.isFireworkBudgetEnabled() || requested <= 0) {
+            return requested;
+        }
+
+        World world = location.getWorld();
+        long now = System.nanoTime();
+        TokenBucket worldBucket = worldBuckets.computeIfAbsent(world.getUID(),
+                id -> new TokenBucket(config.getFireworkBudgetWorldCapacity()));
+        TokenBucket chunkBucket = chunkBuckets.computeIfAbsent(world.getUID(), id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(BlockKeys.chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4),
+                        key -> new TokenBucket(config.getFireworkBudgetChunkCapacity()));
+
+        // The world bucket is shared between regions on Folia
+        synchronized (worldBucket) {
+            synchronized (chunkBucket) {
+                worldBucket.refill(config.getFireworkBudgetWorldCapacity(),
+                        config.getFireworkBudgetWorldRefillPerTick(), now);
+                chunkBucket.refill(config.getFireworkBudgetChunkCapacity(),
+                        config.getFireworkBudgetChunkRefillPerTick(), now);
+
+                int available = (int) Math.min(worldBucket.tokens, chunkBucket.tokens);
+                int granted = Math.min(requested, available);
+                if (config.getFireworkBudgetPolicy() == Policy.DROP && granted < requested) {
+                    granted = 0;
+                }
+
+                worldBucket.tokens -= granted;
+                chunkBucket.tokens -= granted;
+                return granted;
+            }
+        }
+    }
+
+    /**
+     * Forgets chunk buckets that are full again, they behave exactly like a new bucket
+     */
+    public void prune() {
+        ConfigSnapshot config = configManager.getSnapshot();
+        long now = System.nanoTime();
+        double capacity = config.getFireworkBudgetChunkCapacity();
+        double refillPerTick = config.getFireworkBudgetChunkRefillPerTick();
+
+        for (Map<Long, TokenBucket> buckets : chunkBuckets.values()) {
+            Iterator<TokenBucket> iterator = buckets.values().iterator();
+            while (iterator.hasNext()) {
+                TokenBucket bucket = iterator.next();
+                synchronized (bucket) {
+                    bucket.refill(capacity, refillPerTick, now);
+                    if (bucket.tokens >= capacity) {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    public void recordDropped(int rockets) {
+        droppedRockets.addAndGet(rockets);
+    }
+
+    public void recordReduced(int rockets) {
+        reducedRockets.addAndGet(rockets);
+    }
+
+    public void recordMerged(int rockets) {
+        mergedRockets.addAndGet(rockets);
+    }
+
+    /**
+     * @return The number of rockets dropped because they were over budget
+     */
+    public long getDroppedRockets() {
+        return droppedRockets.get();
+    }
+
+    /**
+     * @return The number of rockets cut from a request by the REDUCE policy
+     */
+    public long getReducedRockets() {
+        return reducedRockets.get();
+    }
+
+    /**
+     * @return The number of rockets whose effects were merged into other rockets
+     */
+    public long getMergedRockets() {
+        return mergedRockets.get();
+    }
+}
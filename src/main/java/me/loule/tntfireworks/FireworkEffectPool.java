@@ -0,0 +1,132 @@
+package me.loule.tntfireworks;
+
+import org.bukkit.Color;
+import org.bukkit.FireworkEffect;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Immutable pool of prebuilt firework effects, built when the configuration is loaded.
+ * Spawning a firework only picks an index in the pool instead of building a new effect.
+ */
+public final class FireworkEffectPool {
+    private final FireworkEffect[] effects;
+
+    private FireworkEffectPool(FireworkEffect[] effects) {
+        this.effects = effects;
+    }
+
+    /**
+     * Builds a pool following the same distribution as {@link #createEffect}.
+     * When every possible combination fits in the pool and the palettes are not weighted,
+     * each one is added exactly once, which keeps the distribution exact.
+     * Otherwise the pool is filled with random effects.
+     * @param size Maximum number of effects in the pool
+     * @param randomize Whether types, trail and flicker are randomized
+     * @param trail Whether trails are allowed
+     * @param flicker Whether flicker is allowed
+     * @param colors Palette of the main colors
+     * @param fadeColors Palette of the fade colors
+     * @param random Random source used to fill the pool
+     * @return The pool
+     */
+    public static FireworkEffectPool build(int size, boolean randomize, boolean trail, boolean flicker,
+                                           ColorPalette colors, ColorPalette fadeColors, RandomGenerator random) {
+        FireworkEffect.Type[] types = randomize ? FireworkEffect.Type.values()
+                : new FireworkEffect.Type[] {FireworkEffect.Type.BALL};
+        boolean[] trailOptions = trail && randomize ? new boolean[] {false, true} : new boolean[] {trail};
+        boolean[] flickerOptions = flicker && randomize ? new boolean[] {false, true} : new boolean[] {flicker};
+
+        long combinations = (long) types.length * trailOptions.length * flickerOptions.length
+                * colors.size() * fadeColors.size();
+
+        if (combinations <= size && colors.isUniform() && fadeColors.isUniform()) {
+            FireworkEffect[] effects = new FireworkEffect[(int) combinations];
+            int index = 0;
+            for (FireworkEffect.Type type : types) {
+                for (boolean useTrail : trailOptions) {
+                    for (boolean useFlicker : flickerOptions) {
+                        for (int mainColor = 0; mainColor < colors.size(); mainColor++) {
+                            for (int fadeColor = 0; fadeColor < fadeColors.size(); fadeColor++) {
+                                effects[index++] = buildEffect(type, colors.get(mainColor),
+                                        fadeColors.get(fadeColor), useTrail, useFlicker);
+                            }
+                        }
+                    }
+                }
+            }
+            return new FireworkEffectPool(effects);
+        }
+
+        FireworkEffect[] effects = new FireworkEffect[size];
+        for (int i = 0; i < size; i++) {
+            effects[i] = createEffect(randomize, trail, flicker, colors, fadeColors, random);
+        }
+        return new FireworkEffectPool(effects);
+    }
+
+    /**
+     * Picks an effect from the pool
+     * @param random Random source
+     * @return A prebuilt effect
+     */
+    public FireworkEffect sample(RandomGenerator random) {
+        return effects[random.nextInt(effects.length)];
+    }
+
+    /**
+     * @return The number of effects in the pool
+     */
+    public int size() {
+        return effects.length;
+    }
+
+    /**
+     * Builds a firework effect with random or configured properties
+     * @param randomize Whether the type, trail and flicker are randomized
+     * @param trail Whether trails are allowed
+     * @param flicker Whether flicker is allowed
+     * @param colors Palette of the main colors
+     * @param fadeColors Palette of the fade colors
+     * @param random Random source
+     * @return The firework effect
+     */
+    public static FireworkEffect createEffect(boolean randomize, boolean trail, boolean flicker,
+                                              ColorPalette colors, ColorPalette fadeColors,
+                                              RandomGenerator random) {
+        // Select firework type and colors
+        FireworkEffect.Type effectType;
+        boolean useTrail;
+        boolean useFlicker;
+
+        if (randomize) {
+            // Random type
+            FireworkEffect.Type[] types = FireworkEffect.Type.values();
+            effectType = types[random.nextInt(types.length)];
+
+            // Random trail and flicker
+            useTrail = trail && random.nextBoolean();
+            useFlicker = flicker && random.nextBoolean();
+        } else {
+            // Default type if not randomized
+            effectType = FireworkEffect.Type.BALL;
+            useTrail = trail;
+            useFlicker = flicker;
+        }
+
+        Color mainColor = colors.sample(random);
+        Color fadeColor = fadeColors.sample(random);
+        return buildEffect(effectType, mainColor, fadeColor, useTrail, useFlicker);
+    }
+
+    private static FireworkEffect buildEffect(FireworkEffect.Type type, Color mainColor, Color fadeColor,
+                                              boolean trail, boolean flicker) {
+        return FireworkEffect.builder()
+                .with(type)
+                .withColor(mainColor)
+                .withFade(fadeColor)
+                .trail(trail)
+                .flicker(flicker)
+                .build();
+    }
+}
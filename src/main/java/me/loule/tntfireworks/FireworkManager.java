@@ -1,88 +1,260 @@
 package me.loule.tntfireworks;
 
-import org.bukkit.Color;
 import org.bukkit.FireworkEffect;
 import org.bukkit.Location;
-import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Firework;
 import org.bukkit.inventory.meta.FireworkMeta;
+import me.loule.tntfireworks.scheduler.TaskScheduler;
+import me.loule.tntfireworks.scheduler.TimingWheel;
 
-import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 public class FireworkManager {
+
+    /**
+     * How fireworks are shown
+     */
+    public enum RenderMode {
+        // Real firework rocket entities
+        ENTITY,
+        // Particles drawn directly, no entity is spawned
+        PARTICLES
+    }
+
     private final ConfigManager configManager;
-    private final Random random;
+    private final TaskScheduler taskScheduler;
+    private final ExplosionRandom explosionRandom;
+    private final ParticleFireworkRenderer particleRenderer;
+    private final FireworkBudget budget;
+    private final FireworkSpreader spreader;
+    private final ViewerGrid viewerGrid;
+    private final QualityGovernor qualityGovernor;
+    // Last rocket spawned in each chunk, over budget effects are merged into it with the MERGE policy
+    private final Map<UUID, Map<Long, Firework>> lastRockets = new ConcurrentHashMap<>();
 
-    public FireworkManager(ConfigManager configManager) {
+    public FireworkManager(ConfigManager configManager, TaskScheduler taskScheduler, TimingWheel timingWheel,
+                           ViewerGrid viewerGrid, QualityGovernor qualityGovernor, ExplosionRandom explosionRandom) {
         this.configManager = configManager;
-        this.random = new Random();
+        this.taskScheduler = taskScheduler;
+        this.explosionRandom = explosionRandom;
+        this.particleRenderer = new ParticleFireworkRenderer();
+        this.budget = new FireworkBudget(configManager);
+        // Queued rockets are spawned on the thread owning their location, unless their chunk unloaded meanwhile
+        this.spreader = new FireworkSpreader(configManager, timingWheel, (config, location, effects, random) ->
+                taskScheduler.runAt(location, () -> {
+                    if (location.getWorld().isChunkLoaded(location.getBlockX() >> 4, location.getBlockZ() >> 4)) {
+                        spawnSingleFirework(config, location, effects, random);
+                    }
+                }));
+        this.viewerGrid = viewerGrid;
+        this.qualityGovernor = qualityGovernor;
+    }
+
+    public FireworkBudget getBudget() {
+        return budget;
+    }
+
+    public FireworkSpreader getSpreader() {
+        return spreader;
     }
 
     /**
-     * Spawns fireworks at the specified location based on configuration settings
-     * @param location Location to spawn fireworks
+     * Spawns a scaled burst of fireworks around the specified location
+     * @param location Center of the burst
+     * @param scale Multiplier applied to the configured firework count
+     * @param spread Maximum horizontal distance of each firework from the center
      */
-    public void spawnFireworks(Location location) {
+    public void spawnFireworks(Location location, int scale, double spread) {
+        spawnFireworks(configManager.getSnapshot(), location, scale, spread);
+    }
+
+    /**
+     * Spawns a scaled burst of fireworks around the specified location
+     * @param config The configuration used by the whole burst, including the rockets spawned later
+     * @param location Center of the burst
+     * @param scale Multiplier applied to the configured firework count
+     * @param spread Maximum horizontal distance of each firework from the center
+     */
+    public void spawnFireworks(ConfigSnapshot config, Location location, int scale, double spread) {
+        // Each burst has its own random stream, seeded in deterministic mode
+        SplittableRandom random = explosionRandom.create(config, location.getWorld(),
+                location.getBlockX(), location.getBlockY(), location.getBlockZ());
+
         // Calculate how many fireworks to spawn
-        int min = configManager.getMinFireworks();
-        int max = configManager.getMaxFireworks();
-        int count = (min == max) ? min : min + random.nextInt(max - min + 1);
+        // Counts are lowered by the quality governor while the server is overloaded
+        int min = qualityGovernor.getMinFireworks(config);
+        int max = qualityGovernor.getMaxFireworks(config);
+        int count = ((min == max) ? min : min + random.nextInt(max - min + 1)) * scale;
+
+        // Fireworks nobody can see are skipped or reduced
+        if (!viewerGrid.hasViewer(config, location)) {
+            count = Math.min(count, config.getViewerCullingUnseenFireworks());
+        }
+        if (count <= 0) {
+            return;
+        }
+
+        // Several effects can be packed into each rocket, the budgets count rockets
+        int effectsPerRocket = config.getFireworkEffectsPerRocket();
+        int rockets = (count + effectsPerRocket - 1) / effectsPerRocket;
 
-        // Spawn the fireworks
-        for (int i = 0; i < count; i++) {
-            spawnSingleFirework(location);
+        // Keep within the world and chunk budgets
+        int granted = budget.acquire(config, location, rockets);
+        int effectCount = count;
+        if (granted < rockets) {
+            int overBudget = rockets - granted;
+            effectCount = Math.min(count, granted * effectsPerRocket);
+            switch (config.getFireworkBudgetPolicy()) {
+                case MERGE:
+                    // Merged rockets are capped, the effects that do not fit are dropped
+                    int maxEffects = Math.max(config.getFireworkBudgetMergeMaxEffects(), effectsPerRocket);
+                    int kept;
+                    if (granted > 0) {
+                        effectCount = Math.min(count, granted * maxEffects);
+                        kept = effectCount;
+                    } else {
+                        kept = mergeIntoLastRocket(config, location, count, maxEffects, random);
+                    }
+                    int droppedRockets = (count - kept + effectsPerRocket - 1) / effectsPerRocket;
+                    if (droppedRockets < overBudget) {
+                        budget.recordMerged(overBudget - droppedRockets);
+                    }
+                    if (droppedRockets > 0) {
+                        budget.recordDropped(Math.min(droppedRockets, overBudget));
+                    }
+                    break;
+                case REDUCE:
+                    budget.recordReduced(overBudget);
+                    break;
+                case DROP:
+                default:
+                    budget.recordDropped(overBudget);
+                    break;
+            }
+        }
+
+        // Spawn the fireworks, the effects are shared between the rockets
+        // Each rocket gets its own stream since it may be spawned on a later tick
+        double rocketSpread = effectsPerRocket > 1 ? spread + config.getFireworkPackingSpread() : spread;
+        for (int i = 0; i < granted; i++) {
+            int effects = effectCount / granted + (i < effectCount % granted ? 1 : 0);
+            if (rocketSpread > 0) {
+                Location offset = location.clone().add((random.nextDouble() * 2 - 1) * rocketSpread, 0,
+                        (random.nextDouble() * 2 - 1) * rocketSpread);
+                spreader.submit(config, offset, effects, random.split());
+            } else {
+                spreader.submit(config, location, effects, random.split());
+            }
         }
     }
 
     /**
      * Spawns a single firework with random or configured properties
+     * @param config The configuration of the burst
      * @param location Location to spawn the firework
+     * @param effects Number of effects carried by the firework
+     * @param random Random stream of the burst
      */
-    private void spawnSingleFirework(Location location) {
-        // Create firework entity
-        Firework firework = (Firework) location.getWorld().spawnEntity(location, EntityType.FIREWORK_ROCKET);
-        FireworkMeta meta = firework.getFireworkMeta();
+    private void spawnSingleFirework(ConfigSnapshot config, Location location, int effects,
+                                     SplittableRandom random) {
+        if (config.getRenderMode() == RenderMode.PARTICLES) {
+            // Draw the bursts without spawning an entity
+            for (int i = 0; i < effects; i++) {
+                particleRenderer.render(location, createEffect(config, random), config.getFireworkPower(), random);
+            }
+            return;
+        }
+
+        // Apply the effects and power before the entity is added to the world,
+        // so clients receive the final metadata with the spawn
+        Consumer<Firework> setup = firework -> {
+            FireworkMeta meta = firework.getFireworkMeta();
+            for (int i = 0; i < effects; i++) {
+                meta.addEffect(createEffect(config, random));
+            }
+            meta.setPower(config.getFireworkPower());
+            firework.setFireworkMeta(meta);
+            // Burst right away instead of flying
+            if (config.isFireworkInstantDetonate()) {
+                firework.setMaxLife(1);
+            }
+        };
+        Firework firework = location.getWorld().spawn(location, Firework.class, setup);
 
-        // Select firework type and colors
-        FireworkEffect.Type effectType;
-        boolean useTrail;
-        boolean useFlicker;
-
-        if (configManager.isRandomizeFireworkEffects()) {
-            // Random type
-            FireworkEffect.Type[] types = FireworkEffect.Type.values();
-            effectType = types[random.nextInt(types.length)];
-
-            // Random trail and flicker
-            useTrail = configManager.isFireworkTrailEnabled() && random.nextBoolean();
-            useFlicker = configManager.isFireworkFlickerEnabled() && random.nextBoolean();
-        } else {
-            // Default type if not randomized
-            effectType = FireworkEffect.Type.BALL;
-            useTrail = configManager.isFireworkTrailEnabled();
-            useFlicker = configManager.isFireworkFlickerEnabled();
+        if (config.getFireworkBudgetPolicy() == FireworkBudget.Policy.MERGE) {
+            lastRockets.computeIfAbsent(location.getWorld().getUID(), id -> new ConcurrentHashMap<>())
+                    .put(chunkKey(location), firework);
+        }
+    }
+
+    /**
+     * Adds effects to the last rocket spawned in the chunk of a location, if it is still flying
+     * @param config The configuration of the burst
+     * @param location Location of the fireworks over budget
+     * @param effects Number of effects to add
+     * @param maxEffects Maximum number of effects the rocket may carry
+     * @param random Random stream of the burst
+     * @return The number of effects added, 0 if there is no rocket or it is full
+     */
+    private int mergeIntoLastRocket(ConfigSnapshot config, Location location, int effects, int maxEffects,
+                                    SplittableRandom random) {
+        if (config.getRenderMode() == RenderMode.PARTICLES) {
+            return 0;
+        }
+
+        Map<Long, Firework> rockets = lastRockets.get(location.getWorld().getUID());
+        Firework firework = rockets == null ? null : rockets.get(chunkKey(location));
+        if (firework == null || !firework.isValid()) {
+            return 0;
         }
 
-        // Get colors from config
-        List<Color> availableColors = configManager.getFireworkColors();
-        Color mainColor = availableColors.get(random.nextInt(availableColors.size()));
-        Color fadeColor = availableColors.get(random.nextInt(availableColors.size()));
-
-        // Build the firework effect
-        FireworkEffect effect = FireworkEffect.builder()
-                .with(effectType)
-                .withColor(mainColor)
-                .withFade(fadeColor)
-                .trail(useTrail)
-                .flicker(useFlicker)
-                .build();
-
-        // Apply the effect and power
-        meta.addEffect(effect);
-        meta.setPower(configManager.getFireworkPower());
-
-        // Update the firework with our settings
+        FireworkMeta meta = firework.getFireworkMeta();
+        int added = Math.min(effects, maxEffects - meta.getEffectsSize());
+        if (added <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < added; i++) {
+            meta.addEffect(createEffect(config, random));
+        }
+        // Setting the meta derives the flight time from the power again, keep the rocket on its current timing
+        int maxLife = firework.getMaxLife();
         firework.setFireworkMeta(meta);
+        firework.setMaxLife(maxLife);
+        return added;
+    }
+
+    /**
+     * Forgets the budgets and rockets that are no longer needed
+     */
+    public void prune() {
+        budget.prune();
+        for (Map<Long, Firework> rockets : lastRockets.values()) {
+            rockets.values().removeIf(firework -> !firework.isValid());
+        }
+    }
+
+    private static long chunkKey(Location location) {
+        return BlockKeys.chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+    }
+
+    /**
+     * Picks a firework effect from the prebuilt pool, or builds one when the pool is disabled
+     * @param config The configuration of the burst
+     * @param random Random stream of the burst
+     * @return The firework effect
+     */
+    private FireworkEffect createEffect(ConfigSnapshot config, SplittableRandom random) {
+        FireworkEffectPool pool = qualityGovernor.getFireworkEffectPool(config);
+        if (pool != null) {
+            return pool.sample(random);
+        }
+
+        return FireworkEffectPool.createEffect(config.isRandomizeFireworkEffects(),
+                qualityGovernor.isFireworkTrailEnabled(config), qualityGovernor.isFireworkFlickerEnabled(config),
+                config.getFireworkPalette(), config.getFireworkFadePalette(), random);
     }
 }
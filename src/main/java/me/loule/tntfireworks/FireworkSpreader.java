@@ -0,0 +1,126 @@
+package me.loule.tntfireworks;
+
+import me.loule.tntfireworks.scheduler.TimingWheel;
+import org.bukkit.Location;
+
+import java.util.ArrayDeque;
+import java.util.SplittableRandom;
+
+/**
+ * Spreads rocket spawns over the next ticks instead of spawning a whole burst at once.
+ * Each rocket waits a small random delay on the timing wheel, then joins a single FIFO queue:
+ * each tick spawns at most the configured number of rockets from the queue, and a rocket
+ * that reached the end of the spread window is spawned whatever the per tick cap.
+ */
+public class FireworkSpreader {
+
+    /**
+     * Spawns a single rocket
+     */
+    @FunctionalInterface
+    public interface Spawner {
+        void spawn(ConfigSnapshot config, Location location, int effects, SplittableRandom random);
+    }
+
+    private static final class PendingRocket {
+        private final ConfigSnapshot config;
+        private final Location location;
+        private final int effects;
+        private final SplittableRandom random;
+        private final long deadline;
+
+        private PendingRocket(ConfigSnapshot config, Location location, int effects, SplittableRandom random,
+                              long deadline) {
+            this.config = config;
+            this.location = location;
+            this.effects = effects;
+            this.random = random;
+            this.deadline = deadline;
+        }
+    }
+
+    private final ConfigManager configManager;
+    private final TimingWheel timingWheel;
+    private final Spawner spawner;
+    private final ArrayDeque<PendingRocket> queue = new ArrayDeque<>();
+    // Rockets still waiting for their delay on the timing wheel
+    private int delayed;
+
+    public FireworkSpreader(ConfigManager configManager, TimingWheel timingWheel, Spawner spawner) {
+        this.configManager = configManager;
+        this.timingWheel = timingWheel;
+        this.spawner = spawner;
+    }
+
+    /**
+     * Queues a rocket, or spawns it right away when spreading is disabled
+     * @param config The configuration of the burst, also used to spawn the rocket
+     * @param location Location of the rocket
+     * @param effects Number of effects carried by the rocket
+     * @param random Random stream of the rocket, only used by the rocket from now on
+     */
+    public void submit(ConfigSnapshot config, Location location, int effects, SplittableRandom random) {
+        if (!config.isFireworkSpreadEnabled()) {
+            spawner.spawn(config, location, effects, random);
+            return;
+        }
+
+        int window = config.getFireworkSpreadMaxTicks();
+        int jitter = Math.min(config.getFireworkSpreadJitterTicks(), window);
+        int delay = jitter > 0 ? random.nextInt(jitter + 1) : 0;
+        PendingRocket rocket = new PendingRocket(config, location, effects, random,
+                System.nanoTime() + window * 50_000_000L);
+        if (delay == 0) {
+            ready(rocket);
+            return;
+        }
+        synchronized (this) {
+            delayed++;
+        }
+        timingWheel.schedule(() -> {
+            synchronized (this) {
+                delayed--;
+            }
+            ready(rocket);
+        }, delay);
+    }
+
+    private synchronized void ready(PendingRocket rocket) {
+        queue.add(rocket);
+    }
+
+    /**
+     * Spawns the rockets due this tick, must be called once per tick
+     */
+    public void tick() {
+        int remaining = configManager.getSnapshot().getFireworkSpreadMaxPerTick();
+        long now = System.nanoTime();
+        while (true) {
+            PendingRocket rocket;
+            synchronized (this) {
+                rocket = queue.peek();
+                // Rockets leave in order, a late rocket is always spawned
+                if (rocket == null || (remaining <= 0 && rocket.deadline - now > 0)) {
+                    return;
+                }
+                queue.poll();
+            }
+            remaining--;
+            spawner.spawn(rocket.config, rocket.location, rocket.effects, rocket.random);
+        }
+    }
+
+    /**
+     * Drops the rockets waiting in the queue, rockets still delayed are dropped with the timing wheel
+     */
+    public synchronized void clear() {
+        queue.clear();
+    }
+
+    /**
+     * @return The number of rockets waiting to be spawned
+     */
+    public synchronized int size() {
+        return queue.size() + delayed;
+    }
+}
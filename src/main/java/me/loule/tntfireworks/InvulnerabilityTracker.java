@@ -0,0 +1,116 @@
+package me.loule.tntfireworks;
+
+import me.loule.tntfireworks.scheduler.TaskScheduler;
+import me.loule.tntfireworks.scheduler.TimingWheel;
+import org.bukkit.entity.Entity;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.EntitiesUnloadEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps decoration entities invulnerable for a short time after an explosion.
+ * Each protected entity has one timeout on the timing wheel: protecting an entity
+ * again cancels its timeout and arms a new one, so no task runs while nothing expires.
+ * Entities that were already invulnerable, protected by another plugin, are never touched.
+ */
+public class InvulnerabilityTracker implements Listener {
+
+    private static final class Protection {
+        private final Entity entity;
+        private TimingWheel.Timeout timeout;
+
+        private Protection(Entity entity) {
+            this.entity = entity;
+        }
+    }
+
+    private final TaskScheduler taskScheduler;
+    private final TimingWheel timingWheel;
+    private final long durationTicks;
+    private final Map<UUID, Protection> protections = new HashMap<>();
+
+    public InvulnerabilityTracker(TaskScheduler taskScheduler, TimingWheel timingWheel, long durationTicks) {
+        this.taskScheduler = taskScheduler;
+        this.timingWheel = timingWheel;
+        this.durationTicks = durationTicks;
+    }
+
+    /**
+     * Makes an entity invulnerable, or extends its protection if it is already protected
+     * @param entity The entity to protect
+     */
+    public synchronized void protect(Entity entity) {
+        UUID id = entity.getUniqueId();
+        Protection previous = protections.remove(id);
+        if (previous != null) {
+            previous.timeout.cancel();
+        } else if (entity.isInvulnerable()) {
+            // Protected by someone else, leave it alone
+            return;
+        } else {
+            entity.setInvulnerable(true);
+        }
+
+        // A new protection per hit, a timeout that already fired cannot end the newer one
+        Protection protection = new Protection(entity);
+        protection.timeout = timingWheel.schedule(() -> expire(id, protection), durationTicks);
+        protections.put(id, protection);
+    }
+
+    // Called on the global thread by the timing wheel
+    private void expire(UUID id, Protection protection) {
+        synchronized (this) {
+            if (!protections.remove(id, protection)) {
+                return;
+            }
+        }
+        Entity entity = protection.entity;
+        taskScheduler.runForEntity(entity, () -> entity.setInvulnerable(false));
+    }
+
+    /**
+     * @return The number of entities currently protected
+     */
+    public synchronized int size() {
+        return protections.size();
+    }
+
+    /**
+     * Removes every protection, used when the plugin is disabled. Each entity is released on
+     * the thread owning it, on Folia entities whose thread no longer accepts tasks stay protected.
+     */
+    public synchronized void releaseAll() {
+        for (Protection protection : protections.values()) {
+            protection.timeout.cancel();
+            Entity entity = protection.entity;
+            try {
+                taskScheduler.runForEntity(entity, () -> entity.setInvulnerable(false));
+            } catch (RuntimeException e) {
+                // Tasks are refused once the plugin is disabled
+            }
+        }
+        protections.clear();
+    }
+
+    // Entities saved with their chunk must not stay invulnerable
+    @EventHandler
+    public void onEntitiesUnload(EntitiesUnloadEvent event) {
+        synchronized (this) {
+            if (protections.isEmpty()) {
+                return;
+            }
+            for (Entity entity : event.getEntities()) {
+                Protection protection = protections.remove(entity.getUniqueId());
+                if (protection != null) {
+                    protection.timeout.cancel();
+                    // The event is called on the thread owning the entities, so this runs right away
+                    taskScheduler.runForEntity(entity, () -> entity.setInvulnerable(false));
+                }
+            }
+        }
+    }
+}
@@ -1,8 +1,13 @@
 package me.loule.tntfireworks;
 
+import me.loule.tntfireworks.scheduler.TaskScheduler;
+import me.loule.tntfireworks.scheduler.TimingWheel;
 import me.loule.tntfireworks.updater.UpdateManager;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.Particle;
+import org.bukkit.Sound;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
@@ -15,19 +20,34 @@ import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.EntityDamageByEntityEvent;
 import org.bukkit.event.entity.EntityDamageEvent.DamageCause;
+import org.bukkit.event.block.BlockExplodeEvent;
 import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.entity.ExplosionPrimeEvent;
 import org.bukkit.event.hanging.HangingBreakEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.File;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 public class Main extends JavaPlugin implements Listener {
 
-    private final Random random = new Random();
+    private TaskScheduler taskScheduler;
+    private TimingWheel timingWheel;
+    private InvulnerabilityTracker invulnerabilityTracker;
     private ConfigManager configManager;
     private FireworkManager fireworkManager;
+    private ViewerGrid viewerGrid;
+    private QualityGovernor qualityGovernor;
+    private ExplosionRandom explosionRandom;
+    private DeferredChainReactions deferredChainReactions;
+    private ExplosionCoalescer explosionCoalescer;
+    private ChainReactionScanner chainReactionScanner;
+    private CascadeQueue cascadeQueue;
+    private CascadeTracker cascadeTracker;
+    private TntStacker tntStacker;
+    private TntIndex tntIndex;
+    private ChainReactionPlanner chainReactionPlanner;
     private UpdateManager updateManager;
 
     @Override
@@ -44,13 +64,64 @@ public class Main extends JavaPlugin implements Listener {
         // Check and clean up old update files
         cleanupUpdateFiles();
 
+        // Use the region schedulers on Folia, the Bukkit scheduler elsewhere
+        taskScheduler = TaskScheduler.create(this);
+
+        // Delayed actions share a single repeating task
+        timingWheel = new TimingWheel(getLogger(), 9);
+        taskScheduler.runGlobalTimer(timingWheel::tick, 1L, 1L);
+
+        // Decoration entities stay invulnerable for a short time after an explosion
+        invulnerabilityTracker = new InvulnerabilityTracker(taskScheduler, timingWheel, 25L);
+
         // Initialize managers
         configManager = new ConfigManager(this);
-        fireworkManager = new FireworkManager(configManager);
+        viewerGrid = new ViewerGrid(this, configManager);
+        qualityGovernor = new QualityGovernor(this, configManager);
+        explosionRandom = new ExplosionRandom();
+        fireworkManager = new FireworkManager(configManager, taskScheduler, timingWheel, viewerGrid,
+                qualityGovernor, explosionRandom);
+        explosionCoalescer = new ExplosionCoalescer(this, configManager, fireworkManager);
+        chainReactionScanner = new ChainReactionScanner(taskScheduler);
+        tntIndex = new TntIndex(this, configManager, chainReactionScanner);
+        cascadeTracker = new CascadeTracker(getLogger(), configManager);
+        tntStacker = new TntStacker();
+        cascadeQueue = new CascadeQueue((world, x, y, z, fuseTicks, cascade, generation) ->
+                taskScheduler.runAt(world, x >> 4, z >> 4,
+                        () -> primeTNT(world, x, y, z, fuseTicks, cascade, generation)));
+        cascadeQueue.setOrder(configManager.getSnapshot().getChainReactionQueueOrder());
+        deferredChainReactions = new DeferredChainReactions(this, configManager, cascadeTracker);
+        chainReactionPlanner = new ChainReactionPlanner(this, chainReactionScanner, tntIndex, cascadeTracker,
+                explosionRandom);
         updateManager = new UpdateManager(this);
 
         // Register event listener
         getServer().getPluginManager().registerEvents(this, this);
+        getServer().getPluginManager().registerEvents(tntIndex, this);
+        getServer().getPluginManager().registerEvents(invulnerabilityTracker, this);
+        getServer().getPluginManager().registerEvents(deferredChainReactions, this);
+
+        // Prime queued chain reaction TNT and drop chunk snapshots from the previous tick
+        taskScheduler.runGlobalTimer(this::tickChainReactions, 1L, 1L);
+
+        // Lower the quality while the server is overloaded
+        taskScheduler.runGlobalTimer(qualityGovernor::tick, 1L, 1L);
+
+        // Keep the player positions used to cull unseen fireworks up to date
+        taskScheduler.runGlobalTimer(viewerGrid::tick, 1L, 1L);
+
+        // Spawn the rockets spread over the next ticks
+        taskScheduler.runGlobalTimer(fireworkManager.getSpreader()::tick, 1L, 1L);
+
+        // Forget firework budgets that are full again
+        taskScheduler.runGlobalTimer(fireworkManager::prune, 100L, 100L);
+
+        // Forget chain reactions waiting for chunks that did not load in time
+        taskScheduler.runGlobalTimer(deferredChainReactions::prune, 100L, 100L);
+
+        // Forget primed cascade TNT that was removed without exploding
+        taskScheduler.runGlobalTimer(cascadeTracker::prune, 100L, 100L);
+        taskScheduler.runGlobalTimer(tntStacker::prune, 100L, 100L);
 
         // Register tab completer
         getCommand("tntfireworks").setTabCompleter(new CommandTabCompleter());
@@ -139,8 +210,37 @@ public class Main extends JavaPlugin implements Listener {
         }
     }
 
+    /**
+     * @return The scheduler to use for the plugin's tasks
+     */
+    public TaskScheduler getTaskScheduler() {
+        return taskScheduler;
+    }
+
+    /**
+     * @return The timing wheel holding the plugin's delayed actions
+     */
+    public TimingWheel getTimingWheel() {
+        return timingWheel;
+    }
+
     @Override
     public void onDisable() {
+        if (cascadeQueue != null) {
+            cascadeQueue.clear();
+        }
+        if (timingWheel != null) {
+            timingWheel.clear();
+        }
+        if (fireworkManager != null) {
+            fireworkManager.getSpreader().clear();
+        }
+        if (tntIndex != null) {
+            tntIndex.saveAll();
+        }
+        if (invulnerabilityTracker != null) {
+            invulnerabilityTracker.releaseAll();
+        }
         getLogger().info("[TNTFireworks] Plugin disabled successfully!");
     }
 
@@ -159,8 +259,12 @@ public class Main extends JavaPlugin implements Listener {
             if (args.length > 0) {
                 if (args[0].equalsIgnoreCase("reload")) {
                     if (sender.hasPermission("tntfireworks.reload")) {
-                        configManager.loadConfig();
-                        sender.sendMessage("§a[TNTFireworks] Configuration reloaded successfully!");
+                        // Parsed in an async task, explosions keep the previous configuration until then
+                        configManager.reloadAsync(() -> {
+                            cascadeQueue.setOrder(configManager.getSnapshot().getChainReactionQueueOrder());
+                            sender.sendMessage("§a[TNTFireworks] Configuration reloaded successfully!");
+                        }, () -> sender.sendMessage(
+                                "§c[TNTFireworks] Could not reload the configuration, see the console for details."));
                         return true;
                     } else {
                         sender.sendMessage("§c[TNTFireworks] You don't have permission to use this command.");
@@ -198,6 +302,22 @@ public class Main extends JavaPlugin implements Listener {
                 sender.sendMessage("§6[TNTFireworks] §f/tntfireworks update §7- §fDownload the latest version");
             }
 
+            // Display the chain reaction queue state
+            if (sender.hasPermission("tntfireworks.reload")) {
+                sender.sendMessage("§6[TNTFireworks] §fChain reaction queue: §e" + cascadeQueue.size()
+                        + " §fTNT pending §7(" + configManager.getSnapshot().getChainReactionQueueOrder() + ")");
+                sender.sendMessage("§6[TNTFireworks] §fCascade TNT primed: §e" + cascadeTracker.size()
+                        + " §f(§e" + tntStacker.size() + " §fstacks)");
+
+                FireworkBudget budget = fireworkManager.getBudget();
+                sender.sendMessage("§6[TNTFireworks] §fFireworks over budget: §e" + budget.getDroppedRockets()
+                        + " §fdropped, §e" + budget.getReducedRockets() + " §freduced, §e"
+                        + budget.getMergedRockets() + " §fmerged");
+                sender.sendMessage("§6[TNTFireworks] §fFireworks waiting to spawn: §e"
+                        + fireworkManager.getSpreader().size());
+                sender.sendMessage("§6[TNTFireworks] §fQuality level: §e" + qualityGovernor.getLevel());
+            }
+
             // Display if an update is available
             if (updateManager.isUpdateAvailable() && sender.hasPermission("tntfireworks.update")) {
                 sender.sendMessage("§6[TNTFireworks] §eAn update is available! Use §b/tntfireworks update §eto update.");
@@ -210,40 +330,93 @@ public class Main extends JavaPlugin implements Listener {
 
     @EventHandler(priority = EventPriority.NORMAL)
     public void onTNTExplode(EntityExplodeEvent event) {
-        EntityType entityType = event.getEntityType();
+        // Explosion settings are compiled per entity type, other types stop here
+        ConfigSnapshot config = configManager.getSnapshot();
+        ExplosionPolicy policy = config.getExplosionPolicy(event.getEntityType());
+        if (policy == null) {
+            return;
+        }
 
-        // Handle block damage separately based on entity type
-        if ((entityType == EntityType.TNT || entityType == EntityType.TNT_MINECART) && 
-            !configManager.isBlockDamageEnabled()) {
-            event.blockList().clear();
-            event.setYield(0);
-        } else if (entityType == EntityType.CREEPER && 
-                  !configManager.isCreeperBlockDamageEnabled()) {
+        if (!policy.isBlockDamage()) {
             event.blockList().clear();
             event.setYield(0);
         }
+        handleEntityExplosion(config, policy, event.getEntity(), event.getLocation());
+    }
 
-        // Check if this explosion type should be processed for fireworks
-        boolean shouldProcess = false;
+    @EventHandler(priority = EventPriority.HIGH, ignoreCancelled = true)
+    public void onExplosionPrime(ExplosionPrimeEvent event) {
+        ConfigSnapshot config = configManager.getSnapshot();
+        if (!config.isExplosionFastMode()) {
+            return;
+        }
+        // Only explosions that would lose their block damage anyway are skipped
+        ExplosionPolicy policy = config.getExplosionPolicy(event.getEntityType());
+        if (policy == null || policy.isBlockDamage()) {
+            return;
+        }
 
-        if (entityType == EntityType.TNT && configManager.isTntExplosionsEnabled()) {
-            shouldProcess = true;
-        } else if (entityType == EntityType.TNT_MINECART && configManager.isTntMinecartExplosionsEnabled()) {
-            shouldProcess = true;
-        } else if (entityType == EntityType.CREEPER && configManager.isCreeperExplosionsEnabled()) {
-            shouldProcess = true;
+        // Cancel the vanilla explosion, removing the entity as the explosion would have
+        event.setCancelled(true);
+        Entity entity = event.getEntity();
+        Location location = entity.getLocation();
+        if (entity.isValid()) {
+            entity.remove();
         }
 
-        if (shouldProcess) {
-            Location location = event.getLocation();
+        if (config.isExplosionFastModeEffects()) {
+            World world = location.getWorld();
+            world.playSound(location, Sound.ENTITY_GENERIC_EXPLODE, 4.0F, 0.7F);
+            world.spawnParticle(event.getRadius() >= 2.0F ? Particle.EXPLOSION_EMITTER : Particle.EXPLOSION,
+                    location, 1);
+        }
+        handleEntityExplosion(config, policy, entity, location);
+    }
 
-            // Check for chain reactions if enabled
-            if (configManager.isChainReactionEnabled()) {
-                checkAndPrimeTNT(location, configManager.getChainReactionRadius());
-            }
+    private void handleEntityExplosion(ConfigSnapshot config, ExplosionPolicy policy, Entity entity,
+                                       Location location) {
+        // TNT primed by a chain reaction continues its cascade
+        CascadeTracker.Member origin = cascadeTracker.explode(entity);
+        // A stack spawns the fireworks of all its TNT at once
+        int stackCount = tntStacker.explode(entity);
+        try {
+            handleExplosion(config, policy, location, origin, stackCount);
+        } finally {
+            cascadeTracker.release(origin.getCascade());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.NORMAL)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        // Beds and respawn anchors, the block is already gone when the event is called
+        ConfigSnapshot config = configManager.getSnapshot();
+        ExplosionPolicy policy = config.getExplosionPolicy(event.getExplodedBlockState().getType());
+        if (policy == null) {
+            return;
+        }
+
+        if (!policy.isBlockDamage()) {
+            event.blockList().clear();
+            event.setYield(0);
+        }
+        CascadeTracker.Member origin = cascadeTracker.explode(null);
+        try {
+            handleExplosion(config, policy, event.getBlock().getLocation().add(0.5, 0.5, 0.5), origin, 1);
+        } finally {
+            cascadeTracker.release(origin.getCascade());
+        }
+    }
 
-            // Spawn fireworks
-            fireworkManager.spawnFireworks(location);
+    private void handleExplosion(ConfigSnapshot config, ExplosionPolicy policy, Location location,
+                                 CascadeTracker.Member origin, int stackCount) {
+        // Check for chain reactions if enabled
+        if (policy.isChainReaction() && config.isChainReactionEnabled()) {
+            checkAndPrimeTNT(config, location, origin);
+        }
+
+        // Spawn fireworks, grouped with the other explosions of this tick
+        if (policy.isFireworks()) {
+            explosionCoalescer.add(config, location, policy.getFireworkScale() * stackCount);
         }
     }
 
@@ -255,7 +428,7 @@ public class Main extends JavaPlugin implements Listener {
             EntityType entityType = event.getEntityType();
             
             // Protect decorative entities if enabled
-            if (configManager.isProtectDecorationEntities() && 
+            if (configManager.getSnapshot().isProtectDecorationEntities() && 
                  entityType == EntityType.ARMOR_STAND) {
                 
                 event.setCancelled(true);
@@ -266,57 +439,162 @@ public class Main extends JavaPlugin implements Listener {
     // Specific protection for hanging entities (item frames, paintings)
     @EventHandler(priority = EventPriority.HIGHEST)
     public void onHangingBreak(HangingBreakEvent event) {
-        if (event.getCause() == HangingBreakEvent.RemoveCause.EXPLOSION && configManager.isProtectDecorationEntities()) {
+        if (event.getCause() == HangingBreakEvent.RemoveCause.EXPLOSION && configManager.getSnapshot().isProtectDecorationEntities()) {
             // Cancel the event to protect the hanging entity
             event.setCancelled(true);
             
-            // Additional protection with temporary invulnerability
-            Entity entity = event.getEntity();
-            entity.setInvulnerable(true);
-            
-            // Maintain invulnerability for a short time
-            for (int i = 1; i <= 4; i++) {
-                getServer().getScheduler().runTaskLater(this, () -> {
-                    if (entity.isValid()) {
-                        entity.setInvulnerable(true);
-                    }
-                }, i * 5L);
+            // Additional protection with temporary invulnerability, extended if hit again
+            invulnerabilityTracker.protect(event.getEntity());
+        }
+    }
+
+    private void checkAndPrimeTNT(ConfigSnapshot config, Location center, CascadeTracker.Member origin) {
+        World world = center.getWorld();
+        int centerX = center.getBlockX();
+        int centerY = center.getBlockY();
+        int centerZ = center.getBlockZ();
+        // Chain reactions shrink, then stop, while the server is overloaded
+        if (qualityGovernor.isCascadePaused()) {
+            return;
+        }
+        OffsetTable offsets = qualityGovernor.getChainReactionOffsets(config);
+        // Chunks are never loaded here, unloaded ones are searched once they load,
+        // unless a limit already stopped the cascade
+        if (!cascadeTracker.isStopped(origin.getCascade())) {
+            deferredChainReactions.deferUnloaded(config, world, centerX, centerY, centerZ, offsets, origin);
+        }
+        int maxPrimes = config.getChainReactionMaxPrimes();
+        int minTicks = config.getMinFuseTicks();
+        int maxTicks = config.getMaxFuseTicks();
+        // Fuse times come from the explosion's own random stream, seeded in deterministic mode
+        SplittableRandom random = explosionRandom.create(config, world, centerX, centerY, centerZ);
+
+        if (config.isChainReactionIndexEnabled()) {
+            tntIndex.query(config, world, centerX, centerY, centerZ, offsets, maxPrimes,
+                    (x, y, z) -> queuePrime(config, world, x, y, z, centerX, centerY, centerZ, minTicks, maxTicks,
+                            random, origin));
+        } else if (config.isChainReactionAsyncPlanning()) {
+            // Search the snapshots in an async task, the result is queued back on the main thread
+            chainReactionPlanner.plan(config, world, centerX, centerY, centerZ, offsets, maxPrimes, minTicks,
+                    maxTicks, origin);
+        } else {
+            chainReactionScanner.scan(world, centerX, centerY, centerZ, offsets, maxPrimes,
+                    (x, y, z) -> queuePrime(config, world, x, y, z, centerX, centerY, centerZ, minTicks, maxTicks,
+                            random, origin));
+        }
+    }
+
+    /**
+     * Queues the TNT of a chunk reached by an explosion while the chunk was not loaded
+     * @param world World of the chunk
+     * @param chunkX Chunk X
+     * @param chunkZ Chunk Z
+     * @param centerX Block X of the explosion
+     * @param centerY Block Y of the explosion
+     * @param centerZ Block Z of the explosion
+     * @param offsets Offset table giving the shape and radius of the explosion
+     * @param origin The explosion, the TNT found are admitted against its cascade limits.
+     *               Its cascade must have been held when the explosion was deferred.
+     */
+    void resumeChainReaction(World world, int chunkX, int chunkZ, int centerX, int centerY, int centerZ,
+                             OffsetTable offsets, CascadeTracker.Member origin) {
+        ConfigSnapshot config = configManager.getSnapshot();
+        CascadeTracker.Cascade cascade = origin.getCascade();
+        // The cascade was held while the explosion was deferred, the hold ends here
+        try {
+            if (!config.isChainReactionEnabled() || qualityGovernor.isCascadePaused()
+                    || cascadeTracker.isStopped(cascade)) {
+                return;
             }
-            
-            // Remove invulnerability after a delay
-            getServer().getScheduler().runTaskLater(this, () -> {
-                if (entity.isValid()) {
-                    entity.setInvulnerable(false);
+
+            ChainShape shape = offsets.getShape();
+            int radius = offsets.getRadius();
+            int minTicks = config.getMinFuseTicks();
+            int maxTicks = config.getMaxFuseTicks();
+            SplittableRandom random = explosionRandom.create(config, world, centerX, centerY, centerZ);
+            chainReactionScanner.scanChunk(world, chunkX, chunkZ, (x, y, z) -> {
+                if (shape.contains(x - centerX, y - centerY, z - centerZ, radius)) {
+                    queuePrime(config, world, x, y, z, centerX, centerY, centerZ, minTicks, maxTicks, random,
+                            origin);
                 }
-            }, 25L);
+            });
+        } finally {
+            cascadeTracker.release(cascade);
         }
     }
-    
-    private void checkAndPrimeTNT(Location center, int radius) {
-        for (int x = -radius; x <= radius; x++) {
-            for (int y = -radius; y <= radius; y++) {
-                for (int z = -radius; z <= radius; z++) {
-                    Location blockLoc = center.clone().add(x, y, z);
-                    Block block = blockLoc.getBlock();
-
-                    if (block.getType() == Material.TNT) {
-                        // Replace TNT block with primed TNT
-                        block.setType(Material.AIR);
-                        TNTPrimed primedTNT = (TNTPrimed) center.getWorld().spawnEntity(
-                                blockLoc.clone().add(0.5, 0.5, 0.5), 
-                                EntityType.TNT
-                        );
-
-                        // Set random fuse time within configured range
-                        int minTicks = configManager.getMinFuseTicks();
-                        int maxTicks = configManager.getMaxFuseTicks();
-                        int fuseTicks = (minTicks == maxTicks) ? minTicks : 
-                                minTicks + random.nextInt(maxTicks - minTicks + 1);
-
-                        primedTNT.setFuseTicks(fuseTicks);
-                    }
-                }
-            }
+
+    private void queuePrime(ConfigSnapshot config, World world, int x, int y, int z, int centerX, int centerY,
+                            int centerZ, int minTicks, int maxTicks, SplittableRandom random,
+                            CascadeTracker.Member origin) {
+        // Set random fuse time within configured range
+        int fuseTicks = (minTicks == maxTicks) ? minTicks :
+                minTicks + random.nextInt(maxTicks - minTicks + 1);
+
+        // Queue the TNT found, it is primed gradually by tickChainReactions
+        int dx = x - centerX;
+        int dy = y - centerY;
+        int dz = z - centerZ;
+        enqueueChainPrime(config, world, x, y, z, dx * dx + dy * dy + dz * dz, fuseTicks, origin);
+    }
+
+    /**
+     * Queues a TNT found by an explosion, unless a limit of its cascade was reached
+     * @param config The configuration of the explosion
+     * @param world World of the TNT
+     * @param x Block X of the TNT
+     * @param y Block Y of the TNT
+     * @param z Block Z of the TNT
+     * @param distanceSquared Squared distance between the TNT and the explosion
+     * @param fuseTicks Fuse time of the primed TNT
+     * @param origin The explosion that found the TNT
+     */
+    void enqueueChainPrime(ConfigSnapshot config, World world, int x, int y, int z, int distanceSquared,
+                           int fuseTicks, CascadeTracker.Member origin) {
+        if (!cascadeTracker.admit(config, origin)) {
+            return;
+        }
+        CascadeTracker.Cascade cascade = origin.getCascade();
+        if (!cascadeQueue.enqueue(world, x, y, z, distanceSquared, fuseTicks, cascade, origin.getGeneration() + 1)) {
+            cascadeTracker.cancel(cascade);
+        }
+    }
+
+    private void tickChainReactions() {
+        if (!qualityGovernor.isCascadePaused()) {
+            ConfigSnapshot config = configManager.getSnapshot();
+            cascadeQueue.drain(config.getChainReactionPrimesPerTick(), config.getChainReactionTickBudgetMicros());
+        }
+        chainReactionScanner.clearCache();
+    }
+
+    private void primeTNT(World world, int x, int y, int z, int fuseTicks, CascadeTracker.Cascade cascade,
+                          int generation) {
+        ConfigSnapshot config = configManager.getSnapshot();
+        // The block may have changed, or its chunk unloaded, since it was queued
+        if (!world.isChunkLoaded(x >> 4, z >> 4)) {
+            cascadeTracker.release(cascade);
+            return;
+        }
+        Block block = world.getBlockAt(x, y, z);
+        if (block.getType() != Material.TNT) {
+            tntIndex.remove(config, world, x, y, z);
+            cascadeTracker.release(cascade);
+            return;
+        }
+
+        // Replace TNT block with primed TNT
+        block.setType(Material.AIR);
+        tntIndex.remove(config, world, x, y, z);
+        if (tntStacker.stack(config, world, x, y, z, fuseTicks)) {
+            cascadeTracker.stack(cascade);
+            return;
         }
+        TNTPrimed primedTNT = (TNTPrimed) world.spawnEntity(
+                new Location(world, x + 0.5, y + 0.5, z + 0.5),
+                EntityType.TNT
+        );
+        primedTNT.setFuseTicks(fuseTicks);
+        cascadeTracker.track(primedTNT, cascade, generation);
+        tntStacker.register(config, primedTNT, x, y, z);
     }
 }
\ No newline at end of file
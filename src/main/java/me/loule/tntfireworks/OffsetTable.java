@@ -0,0 +1,128 @@
+package me.loule.tntfireworks;
+
+import java.util.Arrays;
+
+/**
+ * Immutable table of the block offsets inside a {@link ChainShape}, sorted from
+ * the closest to the farthest from the center. Built once when the configuration is loaded.
+ */
+public final class OffsetTable {
+    /**
+     * Largest radius a table can be built for, a table of this radius holds at most 274625 offsets
+     */
+    public static final int MAX_RADIUS = 32;
+
+    private final ChainShape shape;
+    private final int radius;
+    // Offsets stored as consecutive (dx, dy, dz) triples
+    private final int[] offsets;
+    private final int[] distancesSquared;
+
+    private OffsetTable(ChainShape shape, int radius, int[] offsets, int[] distancesSquared) {
+        this.shape = shape;
+        this.radius = radius;
+        this.offsets = offsets;
+        this.distancesSquared = distancesSquared;
+    }
+
+    /**
+     * Builds the offset table of a shape
+     * @param shape Shape of the searched area
+     * @param radius Radius of the shape, in blocks, between 0 and {@link #MAX_RADIUS}
+     * @return The table, sorted by distance from the center
+     */
+    public static OffsetTable build(ChainShape shape, int radius) {
+        if (radius < 0 || radius > MAX_RADIUS) {
+            throw new IllegalArgumentException("Radius must be between 0 and " + MAX_RADIUS + ": " + radius);
+        }
+        int side = 2 * radius + 1;
+        long cells = (long) side * side * side;
+        long[] sortKeys = new long[(int) cells];
+        int count = 0;
+
+        for (int dy = -radius; dy <= radius; dy++) {
+            for (int dx = -radius; dx <= radius; dx++) {
+                for (int dz = -radius; dz <= radius; dz++) {
+                    if (shape.contains(dx, dy, dz, radius)) {
+                        // Sort by distance, then by position in the cube so the order is stable
+                        int cubeIndex = ((dy + radius) * side + (dx + radius)) * side + (dz + radius);
+                        sortKeys[count++] = ((long) (dx * dx + dy * dy + dz * dz) << 32) | cubeIndex;
+                    }
+                }
+            }
+        }
+        Arrays.sort(sortKeys, 0, count);
+
+        int[] offsets = new int[count * 3];
+        int[] distancesSquared = new int[count];
+        for (int i = 0; i < count; i++) {
+            int cubeIndex = (int) sortKeys[i];
+            offsets[i * 3] = (cubeIndex / side) % side - radius;
+            offsets[i * 3 + 1] = cubeIndex / (side * side) - radius;
+            offsets[i * 3 + 2] = cubeIndex % side - radius;
+            distancesSquared[i] = (int) (sortKeys[i] >>> 32);
+        }
+
+        return new OffsetTable(shape, radius, offsets, distancesSquared);
+    }
+
+    /**
+     * Builds the table of the same shape with a smaller radius from this table, without scanning the cube again
+     * @param smallerRadius Radius of the new table, at most the radius of this table
+     * @return The table, sorted by distance from the center like this one
+     */
+    public OffsetTable shrink(int smallerRadius) {
+        if (smallerRadius < 0 || smallerRadius > radius) {
+            throw new IllegalArgumentException("Radius must be between 0 and " + radius + ": " + smallerRadius);
+        }
+        // The order by distance, then by position in the cube, does not depend on the cube size
+        int[] smallerOffsets = new int[offsets.length];
+        int[] smallerDistances = new int[distancesSquared.length];
+        int count = 0;
+        for (int i = 0; i < distancesSquared.length; i++) {
+            int dx = offsets[i * 3];
+            int dy = offsets[i * 3 + 1];
+            int dz = offsets[i * 3 + 2];
+            if (Math.abs(dx) <= smallerRadius && Math.abs(dy) <= smallerRadius && Math.abs(dz) <= smallerRadius
+                    && shape.contains(dx, dy, dz, smallerRadius)) {
+                smallerOffsets[count * 3] = dx;
+                smallerOffsets[count * 3 + 1] = dy;
+                smallerOffsets[count * 3 + 2] = dz;
+                smallerDistances[count++] = distancesSquared[i];
+            }
+        }
+        return new OffsetTable(shape, smallerRadius, Arrays.copyOf(smallerOffsets, count * 3),
+                Arrays.copyOf(smallerDistances, count));
+    }
+
+    public ChainShape getShape() {
+        return shape;
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * @return The number of offsets in the table
+     */
+    public int size() {
+        return distancesSquared.length;
+    }
+
+    public int getX(int index) {
+        return offsets[index * 3];
+    }
+
+    public int getY(int index) {
+        return offsets[index * 3 + 1];
+    }
+
+    public int getZ(int index) {
+        return offsets[index * 3 + 2];
+    }
+
+    public int getDistanceSquared(int index) {
+        return distancesSquared[index];
+    }
+}
@@ -0,0 +1,181 @@
+package me.loule.tntfireworks;
+
+import org.bukkit.Color;
+import org.bukkit.FireworkEffect;
+import org.bukkit.Location;
+import org.bukkit.Particle;
+import org.bukkit.Sound;
+import org.bukkit.SoundCategory;
+import org.bukkit.World;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.random.RandomGenerator;
+
+/**
+ * Draws firework bursts with particles only, without spawning any entity.
+ * The point cloud of every {@link FireworkEffect.Type} is computed once, when the renderer is created.
+ */
+public class ParticleFireworkRenderer {
+    private static final float DUST_SIZE = 1.5f;
+    // Height gained per level of firework power before the burst
+    private static final double HEIGHT_PER_POWER = 6.0;
+    private static final double BASE_HEIGHT = 2.0;
+    private static final double TRAIL_STEP = 0.5;
+    private static final double SPARK_SPEED = 0.15;
+
+    // Burst shapes stored as consecutive (x, y, z) offsets from the burst center
+    private final Map<FireworkEffect.Type, double[]> shapes = new EnumMap<>(FireworkEffect.Type.class);
+
+    public ParticleFireworkRenderer() {
+        Random shapeRandom = new Random(0L);
+        shapes.put(FireworkEffect.Type.BALL, sphere(40, 1.5));
+        shapes.put(FireworkEffect.Type.BALL_LARGE, sphere(90, 3.0));
+        shapes.put(FireworkEffect.Type.STAR, star(5, 2.0, 0.8, 10));
+        shapes.put(FireworkEffect.Type.BURST, burst(shapeRandom, 30, 2.5));
+        shapes.put(FireworkEffect.Type.CREEPER, creeperFace(0.3));
+    }
+
+    /**
+     * Draws a firework effect as particles
+     * @param location Location the firework is launched from
+     * @param effect Effect to draw
+     * @param power Firework power, used for the burst height
+     * @param random Random source for the flicker
+     */
+    public void render(Location location, FireworkEffect effect, int power, RandomGenerator random) {
+        World world = location.getWorld();
+        double x = location.getX();
+        double y = location.getY();
+        double z = location.getZ();
+        double burstY = y + BASE_HEIGHT + power * HEIGHT_PER_POWER;
+
+        // Trail from the launch point to the burst
+        if (effect.hasTrail()) {
+            for (double trailY = y; trailY < burstY; trailY += TRAIL_STEP) {
+                world.spawnParticle(Particle.FIREWORK, x, trailY, z, 1, 0, 0, 0, 0);
+            }
+        }
+
+        Color color = effect.getColors().get(0);
+        Color fade = effect.getFadeColors().isEmpty() ? color : effect.getFadeColors().get(0);
+        Particle.DustTransition dust = new Particle.DustTransition(color, fade, DUST_SIZE);
+
+        double[] points = shapes.get(effect.getType());
+        for (int i = 0; i < points.length; i += 3) {
+            double px = x + points[i];
+            double py = burstY + points[i + 1];
+            double pz = z + points[i + 2];
+            world.spawnParticle(Particle.DUST_COLOR_TRANSITION, px, py, pz, 1, 0, 0, 0, 0, dust);
+
+            // Sparks flying outwards, with a count of 0 the offsets are used as the direction
+            if (effect.hasFlicker() && random.nextInt(3) == 0) {
+                world.spawnParticle(Particle.FIREWORK, px, py, pz, 0,
+                        points[i], points[i + 1], points[i + 2], SPARK_SPEED);
+            }
+        }
+
+        Sound sound = effect.getType() == FireworkEffect.Type.BALL_LARGE
+                ? Sound.ENTITY_FIREWORK_ROCKET_LARGE_BLAST
+                : Sound.ENTITY_FIREWORK_ROCKET_BLAST;
+        world.playSound(new Location(world, x, burstY, z), sound, SoundCategory.AMBIENT, 3.0f, 1.0f);
+        if (effect.hasFlicker()) {
+            world.playSound(new Location(world, x, burstY, z), Sound.ENTITY_FIREWORK_ROCKET_TWINKLE,
+                    SoundCategory.AMBIENT, 3.0f, 1.0f);
+        }
+    }
+
+    /**
+     * Evenly spread points on a sphere (Fibonacci lattice)
+     */
+    private static double[] sphere(int count, double radius) {
+        double[] points = new double[count * 3];
+        double goldenAngle = Math.PI * (3 - Math.sqrt(5));
+        for (int i = 0; i < count; i++) {
+            double y = 1 - (i + 0.5) * 2.0 / count;
+            double ring = Math.sqrt(1 - y * y);
+            double angle = goldenAngle * i;
+            points[i * 3] = Math.cos(angle) * ring * radius;
+            points[i * 3 + 1] = y * radius;
+            points[i * 3 + 2] = Math.sin(angle) * ring * radius;
+        }
+        return points;
+    }
+
+    /**
+     * Outline of a star in the vertical plane
+     */
+    private static double[] star(int branches, double outerRadius, double innerRadius, int pointsPerEdge) {
+        int corners = branches * 2;
+        double[] points = new double[corners * pointsPerEdge * 3];
+        int index = 0;
+        for (int corner = 0; corner < corners; corner++) {
+            double fromAngle = Math.PI / 2 + corner * Math.PI / branches;
+            double toAngle = fromAngle + Math.PI / branches;
+            double fromRadius = corner % 2 == 0 ? outerRadius : innerRadius;
+            double toRadius = corner % 2 == 0 ? innerRadius : outerRadius;
+            for (int step = 0; step < pointsPerEdge; step++) {
+                double t = (double) step / pointsPerEdge;
+                points[index++] = (1 - t) * Math.cos(fromAngle) * fromRadius + t * Math.cos(toAngle) * toRadius;
+                points[index++] = (1 - t) * Math.sin(fromAngle) * fromRadius + t * Math.sin(toAngle) * toRadius;
+                points[index++] = 0;
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Points scattered in random directions and distances
+     */
+    private static double[] burst(Random random, int count, double radius) {
+        double[] points = new double[count * 3];
+        for (int i = 0; i < count; i++) {
+            double y = random.nextDouble() * 2 - 1;
+            double ring = Math.sqrt(1 - y * y);
+            double angle = random.nextDouble() * Math.PI * 2;
+            double distance = radius * (0.3 + random.nextDouble() * 0.7);
+            points[i * 3] = Math.cos(angle) * ring * distance;
+            points[i * 3 + 1] = y * distance;
+            points[i * 3 + 2] = Math.sin(angle) * ring * distance;
+        }
+        return points;
+    }
+
+    /**
+     * Creeper face drawn pixel by pixel in the vertical plane
+     */
+    private static double[] creeperFace(double pixelSize) {
+        String[] rows = {
+                "XX....XX",
+                "XX....XX",
+                "........",
+                "...XX...",
+                "..XXXX..",
+                "..XXXX..",
+                "..X..X..",
+                "........"
+        };
+        int count = 0;
+        for (String row : rows) {
+            for (char pixel : row.toCharArray()) {
+                if (pixel == 'X') {
+                    count++;
+                }
+            }
+        }
+
+        double[] points = new double[count * 3];
+        int index = 0;
+        for (int row = 0; row < rows.length; row++) {
+            for (int column = 0; column < rows[row].length(); column++) {
+                if (rows[row].charAt(column) == 'X') {
+                    points[index++] = (column - 3.5) * pixelSize;
+                    points[index++] = (3.5 - row) * pixelSize;
+                    points[index++] = 0;
+                }
+            }
+        }
+        return points;
+    }
+}
@@ -0,0 +1,185 @@
+package me.loule.tntfireworks;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * Watches the server tick time and lowers the quality of the fireworks and chain
+ * reactions while the server is overloaded, then raises it again once it recovers.
+ * Managers read the current level through this class instead of the raw configuration.
+ */
+public class QualityGovernor {
+    // Without tick time reporting, the time between ticks never goes below 50 ms
+    private static final double FALLBACK_MIN_THRESHOLD = 52.0;
+    // Weight of a new sample in the average time between ticks
+    private static final double FALLBACK_SMOOTHING = 0.05;
+
+    /**
+     * Quality levels, each one includes the reductions of the previous ones
+     */
+    public enum Level {
+        FULL(1.0, true, false, false),
+        FEWER_FIREWORKS(0.5, true, false, false),
+        NO_EFFECTS(0.5, false, false, false),
+        SMALL_RADIUS(0.25, false, true, false),
+        CASCADES_PAUSED(0.25, false, true, true);
+
+        private final double fireworkFactor;
+        private final boolean effects;
+        private final boolean smallRadius;
+        private final boolean cascadesPaused;
+
+        Level(double fireworkFactor, boolean effects, boolean smallRadius, boolean cascadesPaused) {
+            this.fireworkFactor = fireworkFactor;
+            this.effects = effects;
+            this.smallRadius = smallRadius;
+            this.cascadesPaused = cascadesPaused;
+        }
+    }
+
+    private final Main plugin;
+    private final ConfigManager configManager;
+    // Paper's average tick time, null when the server does not report it
+    private Method averageTickTime;
+    private double averageInterval = 50.0;
+    private long lastTick;
+    private int ticksSinceChange;
+    private volatile Level level = Level.FULL;
+
+    public QualityGovernor(Main plugin, ConfigManager configManager) {
+        this.plugin = plugin;
+        this.configManager = configManager;
+        try {
+            averageTickTime = plugin.getServer().getClass().getMethod("getAverageTickTime");
+        } catch (NoSuchMethodException e) {
+            averageTickTime = null;
+        }
+    }
+
+    /**
+     * Called every tick on the global thread, samples the tick time and changes level when needed
+     */
+    public void tick() {
+        ConfigSnapshot config = configManager.getSnapshot();
+        long now = System.nanoTime();
+        if (lastTick != 0) {
+            averageInterval += ((now - lastTick) / 1_000_000.0 - averageInterval) * FALLBACK_SMOOTHING;
+        }
+        lastTick = now;
+        ticksSinceChange++;
+
+        if (!config.isQualityGovernorEnabled()) {
+            if (level != Level.FULL) {
+                setLevel(Level.FULL, 0.0);
+            }
+            return;
+        }
+        if (ticksSinceChange < config.getQualityGovernorHoldTicks()) {
+            return;
+        }
+
+        double mspt = averageTickTime != null ? readTickTime() : -1.0;
+        boolean reported = mspt >= 0;
+        if (!reported) {
+            mspt = averageInterval;
+        }
+
+        List<Double> thresholds = config.getQualityGovernorThresholds();
+        int current = level.ordinal();
+
+        // Degrade one level at a time while above the threshold of the next level
+        if (current < thresholds.size() && mspt > threshold(thresholds.get(current), reported)) {
+            setLevel(Level.values()[current + 1], mspt);
+            return;
+        }
+
+        // Recover one level at a time once well below the threshold of the current level,
+        // or when the threshold was removed by a reload
+        if (current > 0 && (current > thresholds.size() || mspt < threshold(thresholds.get(current - 1), reported)
+                - config.getQualityGovernorRecoveryMargin())) {
+            setLevel(Level.values()[current - 1], mspt);
+        }
+    }
+
+    private double threshold(double threshold, boolean reported) {
+        return reported ? threshold : Math.max(threshold, FALLBACK_MIN_THRESHOLD);
+    }
+
+    /**
+     * @return The average tick time reported by the server, or -1 if it cannot be read
+     */
+    private double readTickTime() {
+        try {
+            return ((Number) averageTickTime.invoke(plugin.getServer())).doubleValue();
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            plugin.getLogger().warning("Could not read the tick time, using the time between ticks instead");
+            averageTickTime = null;
+            return -1.0;
+        }
+    }
+
+    private void setLevel(Level newLevel, double mspt) {
+        plugin.getLogger().info("Quality level changed from " + level + " to " + newLevel
+                + String.format(" (%.1f ms per tick)", mspt));
+        level = newLevel;
+        ticksSinceChange = 0;
+    }
+
+    /**
+     * @return The current quality level
+     */
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * @param config The configuration of the current event
+     * @return The minimum firework count for the current level
+     */
+    public int getMinFireworks(ConfigSnapshot config) {
+        return scale(config.getMinFireworks());
+    }
+
+    /**
+     * @param config The configuration of the current event
+     * @return The maximum firework count for the current level
+     */
+    public int getMaxFireworks(ConfigSnapshot config) {
+        return scale(config.getMaxFireworks());
+    }
+
+    private int scale(int fireworks) {
+        return fireworks <= 0 ? fireworks : Math.max(1, (int) Math.round(fireworks * level.fireworkFactor));
+    }
+
+    public boolean isFireworkTrailEnabled(ConfigSnapshot config) {
+        return level.effects && config.isFireworkTrailEnabled();
+    }
+
+    public boolean isFireworkFlickerEnabled(ConfigSnapshot config) {
+        return level.effects && config.isFireworkFlickerEnabled();
+    }
+
+    /**
+     * @param config The configuration of the current event
+     * @return The prebuilt firework effects for the current level, or null if pooling is disabled
+     */
+    public FireworkEffectPool getFireworkEffectPool(ConfigSnapshot config) {
+        return level.effects ? config.getFireworkEffectPool() : config.getPlainFireworkEffectPool();
+    }
+
+    /**
+     * @param config The configuration of the current event
+     * @return The chain reaction offsets for the current level
+     */
+    public OffsetTable getChainReactionOffsets(ConfigSnapshot config) {
+        return level.smallRadius ? config.getChainReactionReducedOffsets() : config.getChainReactionOffsets();
+    }
+
+    /**
+     * @return Whether chain reactions are paused at the current level
+     */
+    public boolean isCascadePaused() {
+        return level.cascadesPaused;
+    }
+}
@@ -0,0 +1,584 @@
+package me.loule.tntfireworks;
+
+import org.bukkit.Chunk;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.block.TNTPrimeEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldSaveEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Spatial index of TNT blocks, kept per chunk as packed block coordinates.
+ * A chunk is indexed the first time a chain reaction reaches it and is then kept
+ * up to date from block events, so later lookups only visit the TNT inside the radius.
+ * The index is saved per world in the plugin data folder, the files are written in an async task.
+ * <p>
+ * The same events also stamp each loaded chunk whenever its TNT changes, which lets
+ * chain reaction plans computed off the main thread detect that they are out of date.
+ * Events are ignored while neither the index nor async planning is enabled, and an index
+ * that was not kept up to date for a while is discarded once it is enabled again.
+ */
+public class TntIndex implements Listener {
+    private static final int FILE_VERSION = 1;
+
+    /**
+     * Sorted set of packed block positions for a single chunk
+     */
+    private static final class ChunkEntries {
+        private long[] positions = new long[4];
+        private int size;
+
+        private boolean add(long position) {
+            int index = Arrays.binarySearch(positions, 0, size, position);
+            if (index >= 0) {
+                return false;
+            }
+            index = -index - 1;
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            System.arraycopy(positions, index, positions, index + 1, size - index);
+            positions[index] = position;
+            size++;
+            return true;
+        }
+
+        private boolean remove(long position) {
+            int index = Arrays.binarySearch(positions, 0, size, position);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(positions, index + 1, positions, index, size - index - 1);
+            size--;
+            return true;
+        }
+    }
+
+    private final Main plugin;
+    private final ConfigManager configManager;
+    private final ChainReactionScanner scanner;
+    private final File indexFolder;
+    // Set while the index is disabled, the saved index misses the changes made meanwhile
+    private boolean outdated;
+    // Saves are numbered so an async write never replaces the file with older data
+    private long saveCounter;
+    private final Object fileLock = new Object();
+    private final Map<UUID, Long> writtenSaves = new HashMap<>();
+    // Saves numbered up to this one hold an outdated index and are never written
+    private long discardedSaves;
+
+    // World -> chunk key -> TNT positions. A chunk present in the map is indexed, even when empty.
+    private final Map<UUID, Map<Long, ChunkEntries>> worlds = new HashMap<>();
+    private final Set<UUID> dirtyWorlds = new HashSet<>();
+
+    // World -> chunk key -> value of changeCounter when TNT last changed in that loaded chunk
+    private final Map<UUID, Map<Long, Long>> chunkChanges = new HashMap<>();
+    private long changeCounter;
+
+    public TntIndex(Main plugin, ConfigManager configManager, ChainReactionScanner scanner) {
+        this.plugin = plugin;
+        this.configManager = configManager;
+        this.scanner = scanner;
+        this.indexFolder = new File(plugin.getDataFolder(), "tnt-index");
+    }
+
+    /**
+     * Visits the indexed TNT blocks inside the shape of an offset table.
+     * Chunks that are not indexed yet are scanned once and added to the index,
+     * chunks that are not loaded are skipped.
+     * @param config The configuration of the explosion
+     * @param world World to look in
+     * @param centerX Block X of the center
+     * @param centerY Block Y of the center
+     * @param centerZ Block Z of the center
+     * @param offsets Offset table giving the shape and radius to search
+     * @param maxResults Only visit this many TNT blocks, closest first (0 = no limit)
+     * @param visitor Callback for each TNT block found
+     */
+    public synchronized void query(ConfigSnapshot config, World world, int centerX, int centerY, int centerZ,
+                                   OffsetTable offsets, int maxResults, ChainReactionScanner.TntVisitor visitor) {
+        if (!isIndexing(config)) {
+            return;
+        }
+        Map<Long, ChunkEntries> chunks = getWorldIndex(world);
+        ChainShape shape = offsets.getShape();
+        int radius = offsets.getRadius();
+
+        // Matches are only buffered when they have to be sorted for the limit
+        long[] matches = null;
+        int matchCount = 0;
+
+        for (int chunkX = (centerX - radius) >> 4; chunkX <= (centerX + radius) >> 4; chunkX++) {
+            for (int chunkZ = (centerZ - radius) >> 4; chunkZ <= (centerZ + radius) >> 4; chunkZ++) {
+                // Unloaded chunks are skipped, their TNT could not be primed anyway
+                if (!world.isChunkLoaded(chunkX, chunkZ)) {
+                    continue;
+                }
+
+                ChunkEntries entries = chunks.get(BlockKeys.chunkKey(chunkX, chunkZ));
+                if (entries == null) {
+                    entries = indexChunk(world, chunks, chunkX, chunkZ);
+                }
+
+                for (int i = 0; i < entries.size; i++) {
+                    long position = entries.positions[i];
+                    int dx = BlockKeys.unpackX(position) - centerX;
+                    int dy = BlockKeys.unpackY(position) - centerY;
+                    int dz = BlockKeys.unpackZ(position) - centerZ;
+                    if (!shape.contains(dx, dy, dz, radius)) {
+                        continue;
+                    }
+
+                    if (maxResults <= 0) {
+                        visitor.visit(dx + centerX, dy + centerY, dz + centerZ);
+                        continue;
+                    }
+
+                    if (matches == null) {
+                        matches = new long[16];
+                    } else if (matchCount == matches.length) {
+                        matches = Arrays.copyOf(matches, matchCount * 2);
+                    }
+                    matches[matchCount++] = position;
+                }
+            }
+        }
+
+        if (matches != null) {
+            visitClosest(matches, matchCount, centerX, centerY, centerZ, maxResults, visitor);
+        }
+    }
+
+    private void visitClosest(long[] matches, int matchCount, int centerX, int centerY, int centerZ,
+                              int maxResults, ChainReactionScanner.TntVisitor visitor) {
+        // Sort by squared distance, keeping the match index in the low bits
+        long[] sortKeys = new long[matchCount];
+        for (int i = 0; i < matchCount; i++) {
+            int dx = BlockKeys.unpackX(matches[i]) - centerX;
+            int dy = BlockKeys.unpackY(matches[i]) - centerY;
+            int dz = BlockKeys.unpackZ(matches[i]) - centerZ;
+            sortKeys[i] = ((long) (dx * dx + dy * dy + dz * dz) << 32) | i;
+        }
+        Arrays.sort(sortKeys);
+
+        for (int i = 0; i < Math.min(matchCount, maxResults); i++) {
+            long position = matches[(int) sortKeys[i]];
+            visitor.visit(BlockKeys.unpackX(position), BlockKeys.unpackY(position), BlockKeys.unpackZ(position));
+        }
+    }
+
+    private ChunkEntries indexChunk(World world, Map<Long, ChunkEntries> chunks, int chunkX, int chunkZ) {
+        ChunkEntries entries = new ChunkEntries();
+        scanner.scanChunk(world, chunkX, chunkZ, (x, y, z) -> entries.add(BlockKeys.pack(x, y, z)));
+        chunks.put(BlockKeys.chunkKey(chunkX, chunkZ), entries);
+        markDirty(world);
+        return entries;
+    }
+
+    /**
+     * Records a TNT block, if its chunk is indexed
+     */
+    public synchronized void add(ConfigSnapshot config, World world, int x, int y, int z) {
+        if (!isIndexing(config)) {
+            return;
+        }
+        ChunkEntries entries = getEntries(world, x, z);
+        if (entries != null && entries.add(BlockKeys.pack(x, y, z))) {
+            markDirty(world);
+        }
+    }
+
+    /**
+     * Forgets a TNT block, if its chunk is indexed
+     */
+    public synchronized void remove(ConfigSnapshot config, World world, int x, int y, int z) {
+        if (!isIndexing(config)) {
+            return;
+        }
+        ChunkEntries entries = getEntries(world, x, z);
+        if (entries != null && entries.remove(BlockKeys.pack(x, y, z))) {
+            markDirty(world);
+        }
+    }
+
+    private synchronized void recordChange(ConfigSnapshot config, Block block) {
+        // Change stamps are only read by async planning
+        if (!config.isChainReactionAsyncPlanning()) {
+            return;
+        }
+        chunkChanges.computeIfAbsent(block.getWorld().getUID(), id -> new HashMap<>())
+                .put(BlockKeys.chunkKey(block.getX() >> 4, block.getZ() >> 4), ++changeCounter);
+    }
+
+    /**
+     * Returns a stamp that can later be passed to {@link #hasChangedSince}.
+     * TNT primed by the plugin itself is not counted as a change.
+     * @return The current change stamp
+     */
+    public synchronized long getChangeStamp() {
+        return changeCounter;
+    }
+
+    /**
+     * Checks if TNT was placed, broken, moved or ignited in a chunk since a stamp was taken
+     * @param world World of the chunk
+     * @param chunkX Chunk X
+     * @param chunkZ Chunk Z
+     * @param stamp Stamp returned by {@link #getChangeStamp()}
+     * @return true if the chunk changed after the stamp
+     */
+    public synchronized boolean hasChangedSince(World world, int chunkX, int chunkZ, long stamp) {
+        Map<Long, Long> changes = chunkChanges.get(world.getUID());
+        if (changes == null) {
+            return false;
+        }
+        Long lastChange = changes.get(BlockKeys.chunkKey(chunkX, chunkZ));
+        return lastChange != null && lastChange > stamp;
+    }
+
+    private ChunkEntries getEntries(World world, int x, int z) {
+        return getWorldIndex(world).get(BlockKeys.chunkKey(x >> 4, z >> 4));
+    }
+
+    private Map<Long, ChunkEntries> getWorldIndex(World world) {
+        Map<Long, ChunkEntries> chunks = worlds.get(world.getUID());
+        if (chunks == null) {
+            chunks = load(world);
+            worlds.put(world.getUID(), chunks);
+        }
+        return chunks;
+    }
+
+    private void markDirty(World world) {
+        dirtyWorlds.add(world.getUID());
+    }
+
+    /**
+     * Checks whether the index is enabled, and discards it when it is enabled again after a while
+     * without being kept up to date. Must be called while holding the lock.
+     */
+    private boolean isIndexing(ConfigSnapshot config) {
+        if (!config.isChainReactionIndexEnabled()) {
+            outdated = true;
+            return false;
+        }
+        if (outdated) {
+            outdated = false;
+            worlds.clear();
+            dirtyWorlds.clear();
+            synchronized (fileLock) {
+                discardedSaves = saveCounter;
+                File[] files = indexFolder.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        if (!file.delete()) {
+                            plugin.getLogger().warning("Could not delete outdated TNT index file: "
+                                    + file.getPath());
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    // Events only matter to the index or to async planning
+    private static boolean isTracking(ConfigSnapshot config) {
+        return config.isChainReactionIndexEnabled() || config.isChainReactionAsyncPlanning();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        ConfigSnapshot config = configManager.getSnapshot();
+        Block block = event.getBlockPlaced();
+        if (isTracking(config) && block.getType() == Material.TNT) {
+            recordChange(config, block);
+            add(config, block.getWorld(), block.getX(), block.getY(), block.getZ());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        ConfigSnapshot config = configManager.getSnapshot();
+        Block block = event.getBlock();
+        if (isTracking(config) && block.getType() == Material.TNT) {
+            recordChange(config, block);
+            remove(config, block.getWorld(), block.getX(), block.getY(), block.getZ());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onTNTPrime(TNTPrimeEvent event) {
+        ConfigSnapshot config = configManager.getSnapshot();
+        if (!isTracking(config)) {
+            return;
+        }
+        Block block = event.getBlock();
+        recordChange(config, block);
+        remove(config, block.getWorld(), block.getX(), block.getY(), block.getZ());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonExtend(BlockPistonExtendEvent event) {
+        ConfigSnapshot config = configManager.getSnapshot();
+        if (isTracking(config)) {
+            moveBlocks(config, event.getBlocks(), event.getDirection());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonRetract(BlockPistonRetractEvent event) {
+        ConfigSnapshot config = configManager.getSnapshot();
+        if (isTracking(config)) {
+            moveBlocks(config, event.getBlocks(), event.getDirection());
+        }
+    }
+
+    private void moveBlocks(ConfigSnapshot config, List<Block> blocks, BlockFace direction) {
+        // Remove every old position first so blocks pushed into each other's place are kept
+        for (Block block : blocks) {
+            if (block.getType() == Material.TNT) {
+                recordChange(config, block);
+                remove(config, block.getWorld(), block.getX(), block.getY(), block.getZ());
+            }
+        }
+        for (Block block : blocks) {
+            if (block.getType() == Material.TNT) {
+                recordChange(config, block.getRelative(direction));
+                add(config, block.getWorld(), block.getX() + direction.getModX(),
+                        block.getY() + direction.getModY(), block.getZ() + direction.getModZ());
+            }
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        ConfigSnapshot config = configManager.getSnapshot();
+        if (isTracking(config)) {
+            removeExploded(config, event.blockList());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        ConfigSnapshot config = configManager.getSnapshot();
+        if (isTracking(config)) {
+            removeExploded(config, event.blockList());
+        }
+    }
+
+    private void removeExploded(ConfigSnapshot config, List<Block> blocks) {
+        for (Block block : blocks) {
+            if (block.getType() == Material.TNT) {
+                recordChange(config, block);
+                remove(config, block.getWorld(), block.getX(), block.getY(), block.getZ());
+            }
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public synchronized void onChunkLoad(ChunkLoadEvent event) {
+        if (!isIndexing(configManager.getSnapshot())) {
+            return;
+        }
+        Chunk chunk = event.getChunk();
+        ChunkEntries entries = getEntries(chunk.getWorld(), chunk.getX() << 4, chunk.getZ() << 4);
+        if (entries == null || entries.size == 0) {
+            return;
+        }
+
+        // Drop entries for TNT that was changed while the chunk was not tracked
+        int kept = 0;
+        for (int i = 0; i < entries.size; i++) {
+            long position = entries.positions[i];
+            Block block = chunk.getBlock(BlockKeys.unpackX(position) & 15, BlockKeys.unpackY(position),
+                    BlockKeys.unpackZ(position) & 15);
+            if (block.getType() == Material.TNT) {
+                entries.positions[kept++] = position;
+            }
+        }
+        if (kept != entries.size) {
+            entries.size = kept;
+            markDirty(chunk.getWorld());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public synchronized void onChunkUnload(ChunkUnloadEvent event) {
+        Map<Long, Long> changes = chunkChanges.get(event.getWorld().getUID());
+        if (changes != null) {
+            changes.remove(BlockKeys.chunkKey(event.getChunk().getX(), event.getChunk().getZ()));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public synchronized void onWorldLoad(WorldLoadEvent event) {
+        // Other worlds are loaded the first time they are queried
+        if (isIndexing(configManager.getSnapshot())) {
+            worlds.put(event.getWorld().getUID(), load(event.getWorld()));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldSave(WorldSaveEvent event) {
+        save(event.getWorld(), true);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        save(event.getWorld(), true);
+        synchronized (this) {
+            worlds.remove(event.getWorld().getUID());
+            chunkChanges.remove(event.getWorld().getUID());
+        }
+    }
+
+    /**
+     * Saves every world index that changed since it was last saved, on the calling thread.
+     * Used when the plugin is disabled and async tasks can no longer run.
+     */
+    public void saveAll() {
+        for (World world : plugin.getServer().getWorlds()) {
+            save(world, false);
+        }
+    }
+
+    private void save(World world, boolean async) {
+        UUID worldId = world.getUID();
+        String worldName = world.getName();
+        Map<Long, long[]> copy;
+        long saveId;
+        synchronized (this) {
+            Map<Long, ChunkEntries> chunks = worlds.get(worldId);
+            if (chunks == null || !dirtyWorlds.remove(worldId)) {
+                return;
+            }
+            // Copied under the lock, the index keeps changing while the file is written
+            copy = new HashMap<>(chunks.size());
+            for (Map.Entry<Long, ChunkEntries> entry : chunks.entrySet()) {
+                ChunkEntries entries = entry.getValue();
+                copy.put(entry.getKey(), Arrays.copyOf(entries.positions, entries.size));
+            }
+            saveId = ++saveCounter;
+        }
+
+        if (async) {
+            plugin.getTaskScheduler().runAsync(() -> write(worldId, worldName, copy, saveId));
+        } else {
+            write(worldId, worldName, copy, saveId);
+        }
+    }
+
+    private void write(UUID worldId, String worldName, Map<Long, long[]> chunks, long saveId) {
+        synchronized (fileLock) {
+            Long written = writtenSaves.get(worldId);
+            if (saveId <= discardedSaves || (written != null && written > saveId)) {
+                return;
+            }
+            writtenSaves.put(worldId, saveId);
+            writeFile(worldId, worldName, chunks);
+        }
+    }
+
+    private void writeFile(UUID worldId, String worldName, Map<Long, long[]> chunks) {
+        if (!indexFolder.exists() && !indexFolder.mkdirs()) {
+            plugin.getLogger().warning("Could not create TNT index folder: " + indexFolder.getPath());
+            return;
+        }
+
+        File file = new File(indexFolder, worldId + ".dat");
+        File tempFile = new File(indexFolder, worldId + ".dat.tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(tempFile))))) {
+            out.writeInt(FILE_VERSION);
+            out.writeInt(chunks.size());
+            for (Map.Entry<Long, long[]> entry : chunks.entrySet()) {
+                long[] positions = entry.getValue();
+                out.writeLong(entry.getKey());
+                out.writeInt(positions.length);
+                for (long position : positions) {
+                    out.writeLong(position);
+                }
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("Could not save TNT index for world " + worldName + ": " + e.getMessage());
+            return;
+        }
+
+        if (file.exists() && !file.delete()) {
+            plugin.getLogger().warning("Could not replace TNT index file: " + file.getPath());
+            return;
+        }
+        if (!tempFile.renameTo(file)) {
+            plugin.getLogger().warning("Could not write TNT index file: " + file.getPath());
+        }
+    }
+
+    private Map<Long, ChunkEntries> load(World world) {
+        Map<Long, ChunkEntries> chunks = new HashMap<>();
+        File file = new File(indexFolder, world.getUID() + ".dat");
+        if (!file.exists()) {
+            return chunks;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))))) {
+            int version = in.readInt();
+            if (version != FILE_VERSION) {
+                plugin.getLogger().warning("Ignoring TNT index for world " + world.getName()
+                        + " (unsupported version " + version + ")");
+                return chunks;
+            }
+
+            int chunkCount = in.readInt();
+            for (int i = 0; i < chunkCount; i++) {
+                long chunkKey = in.readLong();
+                ChunkEntries entries = new ChunkEntries();
+                int size = in.readInt();
+                entries.positions = new long[Math.max(4, size)];
+                for (int j = 0; j < size; j++) {
+                    entries.positions[j] = in.readLong();
+                }
+                entries.size = size;
+                chunks.put(chunkKey, entries);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("Could not load TNT index for world " + world.getName()
+                    + ", it will be rebuilt: " + e.getMessage());
+            chunks.clear();
+        }
+        return chunks;
+    }
+}
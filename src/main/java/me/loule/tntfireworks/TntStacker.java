@@ -0,0 +1,139 @@
+package me.loule.tntfireworks;
+
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.TNTPrimed;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Merges chain reaction TNT primed close together into a single entity. The first TNT
+ * primed in a cell is spawned as usual, TNT primed later in the same cell with a similar
+ * fuse time is removed and only adds to the stack count of that entity. When the stack
+ * explodes, it spawns the fireworks of every TNT it holds and checks for chain reactions once.
+ */
+public class TntStacker {
+
+    private static final class Stack {
+        private final TNTPrimed entity;
+        private final long cellKey;
+        private final long explodesAt;
+        private int count = 1;
+
+        private Stack(TNTPrimed entity, long cellKey, long explodesAt) {
+            this.entity = entity;
+            this.cellKey = cellKey;
+            this.explodesAt = explodesAt;
+        }
+    }
+
+    // Newest stack of each cell, per world
+    private final Map<UUID, Map<Long, Stack>> cells = new HashMap<>();
+    // Every stack still alive, keyed by entity id
+    private final Map<Integer, Stack> stacks = new HashMap<>();
+
+    /**
+     * Adds a TNT to the stack of its cell if one explodes at about the same time
+     * @param config The configuration of the caller
+     * @param world World of the TNT
+     * @param x Block X of the TNT
+     * @param y Block Y of the TNT
+     * @param z Block Z of the TNT
+     * @param fuseTicks Fuse time the TNT would be primed with
+     * @return Whether the TNT was stacked, in which case no entity must be spawned for it
+     */
+    public synchronized boolean stack(ConfigSnapshot config, World world, int x, int y, int z, int fuseTicks) {
+        if (!config.isTntStackingEnabled()) {
+            return false;
+        }
+        Map<Long, Stack> worldCells = cells.get(world.getUID());
+        if (worldCells == null) {
+            return false;
+        }
+        Stack stack = worldCells.get(cellKey(config, x, y, z));
+        if (stack == null || stack.count >= config.getTntStackingMaxStack()) {
+            return false;
+        }
+
+        long explodesAt = world.getFullTime() + fuseTicks;
+        if (Math.abs(explodesAt - stack.explodesAt) > config.getTntStackingFuseTolerance()) {
+            return false;
+        }
+        stack.count++;
+        return true;
+    }
+
+    /**
+     * Makes a newly primed TNT the stack of its cell
+     * @param config The configuration of the caller
+     * @param entity The primed TNT
+     * @param x Block X the TNT was primed at
+     * @param y Block Y the TNT was primed at
+     * @param z Block Z the TNT was primed at
+     */
+    public synchronized void register(ConfigSnapshot config, TNTPrimed entity, int x, int y, int z) {
+        if (!config.isTntStackingEnabled()) {
+            return;
+        }
+        World world = entity.getWorld();
+        long cellKey = cellKey(config, x, y, z);
+        Stack stack = new Stack(entity, cellKey, world.getFullTime() + entity.getFuseTicks());
+        cells.computeIfAbsent(world.getUID(), id -> new HashMap<>()).put(cellKey, stack);
+        stacks.put(entity.getEntityId(), stack);
+    }
+
+    /**
+     * Removes the stack of an exploding entity
+     * @param entity The exploding entity
+     * @return The number of TNT the entity holds, 1 if it is not a stack
+     */
+    public synchronized int explode(Entity entity) {
+        Stack stack = stacks.remove(entity.getEntityId());
+        if (stack == null) {
+            return 1;
+        }
+        removeCell(entity.getWorld().getUID(), stack);
+        return stack.count;
+    }
+
+    /**
+     * Forgets stacks that were removed without exploding
+     */
+    public synchronized void prune() {
+        Iterator<Stack> iterator = stacks.values().iterator();
+        while (iterator.hasNext()) {
+            Stack stack = iterator.next();
+            if (!stack.entity.isValid()) {
+                iterator.remove();
+                removeCell(stack.entity.getWorld().getUID(), stack);
+            }
+        }
+    }
+
+    /**
+     * @return The number of stacks alive
+     */
+    public synchronized int size() {
+        return stacks.size();
+    }
+
+    private void removeCell(UUID worldId, Stack stack) {
+        Map<Long, Stack> worldCells = cells.get(worldId);
+        if (worldCells == null) {
+            return;
+        }
+        // A newer stack may have taken the cell over
+        worldCells.remove(stack.cellKey, stack);
+        if (worldCells.isEmpty()) {
+            cells.remove(worldId);
+        }
+    }
+
+    private static long cellKey(ConfigSnapshot config, int x, int y, int z) {
+        int cellSize = config.getTntStackingCellSize();
+        return BlockKeys.pack(Math.floorDiv(x, cellSize), Math.floorDiv(y, cellSize), Math.floorDiv(z, cellSize));
+    }
+}
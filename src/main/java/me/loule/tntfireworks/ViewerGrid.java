@@ -0,0 +1,160 @@
+package me.loule.tntfireworks;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Positions of the players of every world, grouped by chunk and refreshed every few ticks.
+ * Used to skip fireworks that no player is close enough to see. Each player publishes its own
+ * position from the thread owning it, and the grid is rebuilt from the published positions.
+ */
+public class ViewerGrid {
+    // A snapshot older than this many refresh periods is too stale to be trusted
+    private static final int STALE_PERIODS = 4;
+
+    private static final class Position {
+        private final UUID worldId;
+        private final double x;
+        private final double y;
+        private final double z;
+
+        private Position(UUID worldId, double x, double y, double z) {
+            this.worldId = worldId;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+    }
+
+    private final Main plugin;
+    private final ConfigManager configManager;
+    // Per world, per chunk key, consecutive (x, y, z) player positions, null until the first refresh
+    private volatile Map<UUID, Map<Long, double[]>> players;
+    private volatile long refreshedAt;
+    // Last position published by each online player
+    private final Map<UUID, Position> published = new ConcurrentHashMap<>();
+    private int ticksSinceRefresh;
+
+    public ViewerGrid(Main plugin, ConfigManager configManager) {
+        this.plugin = plugin;
+        this.configManager = configManager;
+    }
+
+    /**
+     * Called every tick on the global thread, refreshes the grid when it is due
+     */
+    public void tick() {
+        ConfigSnapshot config = configManager.getSnapshot();
+        if (!config.isViewerCullingEnabled()) {
+            return;
+        }
+        if (++ticksSinceRefresh >= config.getViewerCullingRefreshTicks()) {
+            ticksSinceRefresh = 0;
+            refresh();
+        }
+    }
+
+    /**
+     * Asks every player to publish its position, then rebuilds the grid from the positions
+     * published so far. On Folia the grid is one refresh behind, since positions are published
+     * by the region threads.
+     */
+    public void refresh() {
+        Set<UUID> online = new HashSet<>();
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            online.add(player.getUniqueId());
+            // Runs right away outside Folia
+            plugin.getTaskScheduler().runForEntity(player, () -> publish(player));
+        }
+        published.keySet().retainAll(online);
+
+        Map<UUID, Map<Long, double[]>> grid = new HashMap<>();
+        for (Position position : published.values()) {
+            Map<Long, double[]> chunks = grid.computeIfAbsent(position.worldId, id -> new HashMap<>());
+            long chunkKey = BlockKeys.chunkKey((int) Math.floor(position.x) >> 4, (int) Math.floor(position.z) >> 4);
+            double[] positions = chunks.get(chunkKey);
+            int index;
+            if (positions == null) {
+                positions = new double[3];
+                index = 0;
+            } else {
+                index = positions.length;
+                positions = Arrays.copyOf(positions, index + 3);
+            }
+            positions[index] = position.x;
+            positions[index + 1] = position.y;
+            positions[index + 2] = position.z;
+            chunks.put(chunkKey, positions);
+        }
+
+        refreshedAt = System.nanoTime();
+        players = grid;
+    }
+
+    // Called on the thread owning the player
+    private void publish(Player player) {
+        Location location = player.getLocation();
+        published.put(player.getUniqueId(),
+                new Position(location.getWorld().getUID(), location.getX(), location.getY(), location.getZ()));
+    }
+
+    /**
+     * Checks whether a player is close enough to see a location.
+     * Always true when culling is disabled or the grid has not been refreshed recently.
+     * @param config The configuration of the caller
+     * @param location Location to check
+     * @return true if at least one player is within the view distance
+     */
+    public boolean hasViewer(ConfigSnapshot config, Location location) {
+        if (!config.isViewerCullingEnabled()) {
+            return true;
+        }
+
+        Map<UUID, Map<Long, double[]>> grid = players;
+        long maxAge = config.getViewerCullingRefreshTicks() * STALE_PERIODS * 50_000_000L;
+        if (grid == null || System.nanoTime() - refreshedAt > maxAge) {
+            return true;
+        }
+
+        Map<Long, double[]> chunks = grid.get(location.getWorld().getUID());
+        if (chunks == null) {
+            return false;
+        }
+
+        double distance = config.getViewerCullingDistance();
+        double distanceSquared = distance * distance;
+        double x = location.getX();
+        double y = location.getY();
+        double z = location.getZ();
+        int minChunkX = (int) Math.floor(x - distance) >> 4;
+        int maxChunkX = (int) Math.floor(x + distance) >> 4;
+        int minChunkZ = (int) Math.floor(z - distance) >> 4;
+        int maxChunkZ = (int) Math.floor(z + distance) >> 4;
+
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                double[] positions = chunks.get(BlockKeys.chunkKey(chunkX, chunkZ));
+                if (positions == null) {
+                    continue;
+                }
+                for (int i = 0; i < positions.length; i += 3) {
+                    double dx = positions[i] - x;
+                    double dy = positions[i + 1] - y;
+                    double dz = positions[i + 2] - z;
+                    if (dx * dx + dy * dy + dz * dz <= distanceSquared) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,82 @@
+package me.loule.tntfireworks.scheduler;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Scheduler for servers with a single main thread
+ */
+public class BukkitTaskScheduler implements TaskScheduler {
+    private final Plugin plugin;
+
+    public BukkitTaskScheduler(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean isRegionThreaded() {
+        return false;
+    }
+
+    @Override
+    public void runGlobal(Runnable task) {
+        Bukkit.getScheduler().runTask(plugin, task);
+    }
+
+    @Override
+    public void runGlobalLater(Runnable task, long delayTicks) {
+        Bukkit.getScheduler().runTaskLater(plugin, task, delayTicks);
+    }
+
+    @Override
+    public void runGlobalTimer(Runnable task, long delayTicks, long periodTicks) {
+        Bukkit.getScheduler().runTaskTimer(plugin, task, delayTicks, periodTicks);
+    }
+
+    @Override
+    public void runAt(World world, int chunkX, int chunkZ, Runnable task) {
+        if (Bukkit.isPrimaryThread()) {
+            task.run();
+        } else {
+            Bukkit.getScheduler().runTask(plugin, task);
+        }
+    }
+
+    @Override
+    public void runAtLater(World world, int chunkX, int chunkZ, Runnable task, long delayTicks) {
+        Bukkit.getScheduler().runTaskLater(plugin, task, delayTicks);
+    }
+
+    @Override
+    public void runForEntityLater(Entity entity, Runnable task, long delayTicks) {
+        Bukkit.getScheduler().runTaskLater(plugin, () -> {
+            if (entity.isValid()) {
+                task.run();
+            }
+        }, delayTicks);
+    }
+
+    @Override
+    public void runForEntity(Entity entity, Runnable task) {
+        if (entity.isValid()) {
+            task.run();
+        }
+    }
+
+    @Override
+    public void runAsync(Runnable task) {
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, task);
+    }
+
+    @Override
+    public void runAsyncTimer(Runnable task, long delayTicks, long periodTicks) {
+        Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, task, delayTicks, periodTicks);
+    }
+
+    @Override
+    public boolean isOwnedByCurrentThread(World world, int chunkX, int chunkZ) {
+        return Bukkit.isPrimaryThread();
+    }
+}
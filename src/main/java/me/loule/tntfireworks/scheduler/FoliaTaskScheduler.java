@@ -0,0 +1,173 @@
+package me.loule.tntfireworks.scheduler;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Scheduler for Folia's region threads. The plugin is compiled against the Spigot API,
+ * so the Folia schedulers are reached through reflection, resolved once at startup.
+ */
+public class FoliaTaskScheduler implements TaskScheduler {
+    private static final long MILLIS_PER_TICK = 50L;
+
+    private final Plugin plugin;
+    private final Object globalScheduler;
+    private final Object regionScheduler;
+    private final Object asyncScheduler;
+
+    private final Method globalExecute;
+    private final Method globalRunDelayed;
+    private final Method globalRunAtFixedRate;
+    private final Method regionExecute;
+    private final Method regionRunDelayed;
+    private final Method asyncRunNow;
+    private final Method asyncRunAtFixedRate;
+    private final Method entityGetScheduler;
+    private final Method entityRunDelayed;
+    private final Method entityRun;
+    private final Method isOwnedByCurrentRegion;
+    private final Method isEntityOwnedByCurrentRegion;
+
+    /**
+     * @return true if the Folia region scheduler classes are present
+     */
+    public static boolean isFolia() {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    public FoliaTaskScheduler(Plugin plugin) {
+        this.plugin = plugin;
+        try {
+            Server server = Bukkit.getServer();
+            Class<?> globalClass = Class.forName("io.papermc.paper.threadedregions.scheduler.GlobalRegionScheduler");
+            Class<?> regionClass = Class.forName("io.papermc.paper.threadedregions.scheduler.RegionScheduler");
+            Class<?> asyncClass = Class.forName("io.papermc.paper.threadedregions.scheduler.AsyncScheduler");
+            Class<?> entityClass = Class.forName("io.papermc.paper.threadedregions.scheduler.EntityScheduler");
+
+            globalScheduler = server.getClass().getMethod("getGlobalRegionScheduler").invoke(server);
+            regionScheduler = server.getClass().getMethod("getRegionScheduler").invoke(server);
+            asyncScheduler = server.getClass().getMethod("getAsyncScheduler").invoke(server);
+
+            globalExecute = globalClass.getMethod("execute", Plugin.class, Runnable.class);
+            globalRunDelayed = globalClass.getMethod("runDelayed", Plugin.class, Consumer.class, long.class);
+            globalRunAtFixedRate = globalClass.getMethod("runAtFixedRate", Plugin.class, Consumer.class,
+                    long.class, long.class);
+            regionExecute = regionClass.getMethod("execute", Plugin.class, World.class, int.class, int.class,
+                    Runnable.class);
+            regionRunDelayed = regionClass.getMethod("runDelayed", Plugin.class, World.class, int.class, int.class,
+                    Consumer.class, long.class);
+            asyncRunNow = asyncClass.getMethod("runNow", Plugin.class, Consumer.class);
+            asyncRunAtFixedRate = asyncClass.getMethod("runAtFixedRate", Plugin.class, Consumer.class,
+                    long.class, long.class, TimeUnit.class);
+            entityGetScheduler = Entity.class.getMethod("getScheduler");
+            entityRunDelayed = entityClass.getMethod("runDelayed", Plugin.class, Consumer.class, Runnable.class,
+                    long.class);
+            entityRun = entityClass.getMethod("run", Plugin.class, Consumer.class, Runnable.class);
+            isOwnedByCurrentRegion = server.getClass().getMethod("isOwnedByCurrentRegion", World.class,
+                    int.class, int.class);
+            isEntityOwnedByCurrentRegion = server.getClass().getMethod("isOwnedByCurrentRegion", Entity.class);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not access the Folia schedulers", e);
+        }
+    }
+
+    @Override
+    public boolean isRegionThreaded() {
+        return true;
+    }
+
+    @Override
+    public void runGlobal(Runnable task) {
+        invoke(globalExecute, globalScheduler, plugin, task);
+    }
+
+    @Override
+    public void runGlobalLater(Runnable task, long delayTicks) {
+        invoke(globalRunDelayed, globalScheduler, plugin, consumer(task), Math.max(1L, delayTicks));
+    }
+
+    @Override
+    public void runGlobalTimer(Runnable task, long delayTicks, long periodTicks) {
+        invoke(globalRunAtFixedRate, globalScheduler, plugin, consumer(task), Math.max(1L, delayTicks),
+                periodTicks);
+    }
+
+    @Override
+    public void runAt(World world, int chunkX, int chunkZ, Runnable task) {
+        if (isOwnedByCurrentThread(world, chunkX, chunkZ)) {
+            task.run();
+        } else {
+            invoke(regionExecute, regionScheduler, plugin, world, chunkX, chunkZ, task);
+        }
+    }
+
+    @Override
+    public void runAtLater(World world, int chunkX, int chunkZ, Runnable task, long delayTicks) {
+        invoke(regionRunDelayed, regionScheduler, plugin, world, chunkX, chunkZ, consumer(task),
+                Math.max(1L, delayTicks));
+    }
+
+    @Override
+    public void runForEntityLater(Entity entity, Runnable task, long delayTicks) {
+        Object entityScheduler = invoke(entityGetScheduler, entity);
+        // A null retired callback skips the task when the entity is removed
+        invoke(entityRunDelayed, entityScheduler, plugin, consumer(task), null, Math.max(1L, delayTicks));
+    }
+
+    @Override
+    public void runForEntity(Entity entity, Runnable task) {
+        if ((Boolean) invoke(isEntityOwnedByCurrentRegion, Bukkit.getServer(), entity)) {
+            task.run();
+            return;
+        }
+        Object entityScheduler = invoke(entityGetScheduler, entity);
+        invoke(entityRun, entityScheduler, plugin, consumer(task), null);
+    }
+
+    @Override
+    public void runAsync(Runnable task) {
+        invoke(asyncRunNow, asyncScheduler, plugin, consumer(task));
+    }
+
+    @Override
+    public void runAsyncTimer(Runnable task, long delayTicks, long periodTicks) {
+        invoke(asyncRunAtFixedRate, asyncScheduler, plugin, consumer(task),
+                Math.max(1L, delayTicks) * MILLIS_PER_TICK, periodTicks * MILLIS_PER_TICK, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean isOwnedByCurrentThread(World world, int chunkX, int chunkZ) {
+        return (Boolean) invoke(isOwnedByCurrentRegion, Bukkit.getServer(), world, chunkX, chunkZ);
+    }
+
+    private static Consumer<Object> consumer(Runnable task) {
+        return scheduledTask -> task.run();
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Could not call " + method.getName(), e);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Error in " + method.getName(), cause);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package me.loule.tntfireworks.scheduler;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Schedules the plugin's tasks on the right thread. On Folia, work is sent to the
+ * region thread that owns a location or entity; elsewhere everything runs on the
+ * classic Bukkit scheduler.
+ */
+public interface TaskScheduler {
+
+    /**
+     * Creates the scheduler matching the running server
+     * @param plugin The plugin owning the tasks
+     * @return A Folia scheduler on Folia, the Bukkit scheduler otherwise
+     */
+    static TaskScheduler create(Plugin plugin) {
+        if (FoliaTaskScheduler.isFolia()) {
+            return new FoliaTaskScheduler(plugin);
+        }
+        return new BukkitTaskScheduler(plugin);
+    }
+
+    /**
+     * @return true if the server runs Folia
+     */
+    boolean isRegionThreaded();
+
+    /**
+     * Runs a task on the next tick, on the global thread (the main thread outside Folia)
+     */
+    void runGlobal(Runnable task);
+
+    /**
+     * Runs a task on the global thread after a delay
+     */
+    void runGlobalLater(Runnable task, long delayTicks);
+
+    /**
+     * Runs a task on the global thread every period ticks
+     */
+    void runGlobalTimer(Runnable task, long delayTicks, long periodTicks);
+
+    /**
+     * Runs a task on the thread owning a chunk. It runs immediately when the
+     * current thread already owns it, otherwise as soon as possible.
+     */
+    void runAt(World world, int chunkX, int chunkZ, Runnable task);
+
+    /**
+     * Runs a task on the thread owning a location, see {@link #runAt(World, int, int, Runnable)}
+     */
+    default void runAt(Location location, Runnable task) {
+        runAt(location.getWorld(), location.getBlockX() >> 4, location.getBlockZ() >> 4, task);
+    }
+
+    /**
+     * Runs a task on the thread owning a chunk after a delay
+     */
+    void runAtLater(World world, int chunkX, int chunkZ, Runnable task, long delayTicks);
+
+    /**
+     * Runs a task on the thread owning an entity after a delay.
+     * The task is skipped if the entity is removed in the meantime.
+     */
+    void runForEntityLater(Entity entity, Runnable task, long delayTicks);
+
+    /**
+     * Runs a task on the thread owning an entity. It runs immediately when the current thread
+     * already owns the entity, and always outside Folia, where the caller is expected to be on
+     * the main thread. The task is skipped if the entity is removed.
+     */
+    void runForEntity(Entity entity, Runnable task);
+
+    /**
+     * Runs a task off the server threads
+     */
+    void runAsync(Runnable task);
+
+    /**
+     * Runs a task off the server threads every period ticks
+     */
+    void runAsyncTimer(Runnable task, long delayTicks, long periodTicks);
+
+    /**
+     * @return true if the current thread may access the given chunk
+     */
+    boolean isOwnedByCurrentThread(World world, int chunkX, int chunkZ);
+}
@@ -0,0 +1,158 @@
+package me.loule.tntfireworks.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hashed timing wheel holding the plugin's delayed actions. A single repeating task
+ * calls {@link #tick()}, so thousands of delayed actions cost one scheduler task.
+ * Scheduling and cancelling are O(1): each slot is a doubly linked list of timeouts,
+ * and timeouts further away than one turn of the wheel wait for the right number of rounds.
+ * Actions run on the thread calling {@link #tick()}, the global thread.
+ */
+public class TimingWheel {
+
+    /**
+     * Handle of a scheduled action
+     */
+    public final class Timeout {
+        private final Runnable task;
+        private long rounds;
+        private int slot;
+        private Timeout previous;
+        private Timeout next;
+        private boolean scheduled;
+
+        private Timeout(Runnable task) {
+            this.task = task;
+        }
+
+        /**
+         * Cancels the action if it has not run yet
+         * @return true if the action was cancelled
+         */
+        public boolean cancel() {
+            synchronized (TimingWheel.this) {
+                if (!scheduled) {
+                    return false;
+                }
+                unlink(this);
+                return true;
+            }
+        }
+    }
+
+    private final Logger logger;
+    private final Timeout[] slots;
+    private final int mask;
+    private int cursor;
+    private int size;
+
+    /**
+     * @param logger Logger for errors thrown by actions
+     * @param slotBits Number of slots as a power of two, one slot per tick
+     */
+    public TimingWheel(Logger logger, int slotBits) {
+        this.logger = logger;
+        this.slots = new Timeout[1 << slotBits];
+        this.mask = slots.length - 1;
+    }
+
+    /**
+     * Schedules an action
+     * @param task Action to run
+     * @param delayTicks Delay in ticks, at least one
+     * @return A handle to cancel the action
+     */
+    public synchronized Timeout schedule(Runnable task, long delayTicks) {
+        long delay = Math.max(1L, delayTicks);
+        Timeout timeout = new Timeout(task);
+        timeout.rounds = (delay - 1) / slots.length;
+        timeout.slot = (int) ((cursor + delay) & mask);
+
+        // Insert at the head of the slot
+        Timeout head = slots[timeout.slot];
+        timeout.next = head;
+        if (head != null) {
+            head.previous = timeout;
+        }
+        slots[timeout.slot] = timeout;
+        timeout.scheduled = true;
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Advances the wheel by one tick and runs the actions that are due
+     */
+    public void tick() {
+        List<Runnable> due = null;
+        synchronized (this) {
+            cursor = (cursor + 1) & mask;
+            Timeout timeout = slots[cursor];
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.rounds == 0) {
+                    unlink(timeout);
+                    if (due == null) {
+                        due = new ArrayList<>();
+                    }
+                    due.add(timeout.task);
+                } else {
+                    timeout.rounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        // Run outside the lock, actions may schedule new ones
+        if (due != null) {
+            for (Runnable task : due) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Error in a delayed action", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of actions waiting to run
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Drops every action waiting to run
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < slots.length; i++) {
+            Timeout timeout = slots[i];
+            while (timeout != null) {
+                timeout.scheduled = false;
+                timeout = timeout.next;
+            }
+            slots[i] = null;
+        }
+        size = 0;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            slots[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.scheduled = false;
+        size--;
+    }
+}
@@ -36,7 +36,7 @@ public class UpdateDownloader {
     public void downloadAndRestart(CommandSender sender, String version) {
         sender.sendMessage("§6[TNTFireworks] §eStarting download of version " + version + "...");
 
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+        plugin.getTaskScheduler().runAsync(() -> {
             try {
                 // Build the download URL
                 String downloadUrl = "https://github.com/" + githubRepo + "/releases/download/" + 
@@ -143,7 +143,7 @@ public class UpdateDownloader {
                 }
 
                 // Notify the user
-                Bukkit.getScheduler().runTask(plugin, () -> {
+                plugin.getTaskScheduler().runGlobal(() -> {
                     sender.sendMessage("§6[TNTFireworks] §aUpdate downloaded successfully!");
                     sender.sendMessage("§6[TNTFireworks] §eThe server will now restart to apply the update.");
                     restartServer(sender);
@@ -275,7 +275,7 @@ public class UpdateDownloader {
      * @param message The error message
      */
     private void notifyError(CommandSender sender, String message) {
-        Bukkit.getScheduler().runTask(plugin, () -> {
+        plugin.getTaskScheduler().runGlobal(() -> {
             sender.sendMessage("§6[TNTFireworks] §c" + message);
         });
     }
@@ -425,9 +425,9 @@ public class UpdateDownloader {
         }
 
         // Schedule the restart
-        Bukkit.getScheduler().runTaskLater(plugin, () -> {
+        plugin.getTaskScheduler().runGlobalLater(() -> {
             Bukkit.broadcastMessage("§c[SERVER] §eRestarting server now!");
-            Bukkit.getScheduler().runTaskLater(plugin, () -> {
+            plugin.getTaskScheduler().runGlobalLater(() -> {
                 // Try different restart commands depending on the server
                 try {
                     Bukkit.dispatchCommand(Bukkit.getConsoleSender(), "restart");
@@ -27,12 +27,12 @@ public class UpdateManager {
     public void initialize() {
         if (plugin.getConfig().getBoolean("check-updates", true)) {
             // Check for updates asynchronously
-            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            plugin.getTaskScheduler().runAsync(() -> {
                 updateAvailable = updateChecker.checkForUpdates();
             });
 
             // Periodically check for updates (every 6 hours)
-            plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, () -> {
+            plugin.getTaskScheduler().runAsyncTimer(() -> {
                 updateAvailable = updateChecker.checkForUpdates();
             }, 20L * 60L * 60L * 6L, 20L * 60L * 60L * 6L); // Initial delay and period in ticks
         }
@@ -44,7 +44,7 @@ public class UpdateManager {
      */
     public void notifyOnJoin(Player player) {
         if (updateAvailable && player.hasPermission("tntfireworks.update")) {
-            plugin.getServer().getScheduler().runTaskLater(plugin, () -> {
+            plugin.getTaskScheduler().runForEntityLater(player, () -> {
                 player.sendMessage("§6[TNTFireworks] §eA new version is available: §b" + updateChecker.getLatestVersionString());
                 player.sendMessage("§6[TNTFireworks] §eUse §b/tntfireworks update §eto update the plugin.");
                 player.sendMessage("§6[TNTFireworks] §eYour configuration will be preserved when updating.");
@@ -59,7 +59,7 @@ public class UpdateManager {
     public void checkForUpdates(CommandSender sender) {
         sender.sendMessage("§6[TNTFireworks] §eChecking for updates...");
 
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+        plugin.getTaskScheduler().runAsync(() -> {
             boolean hasUpdate = updateChecker.checkForUpdates();
             updateAvailable = hasUpdate;
 
@@ -80,7 +80,7 @@ public class UpdateManager {
      */
     public void updatePlugin(CommandSender sender, boolean confirmed) {
         // First, always check for updates
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+        plugin.getTaskScheduler().runAsync(() -> {
             boolean hasUpdate = updateChecker.checkForUpdates();
             updateAvailable = hasUpdate;
 